@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images;
+
+import org.bukkit.map.MapPalette;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A matcher that converts RGB colors into the closest color
+ * of the map palette of the running version.
+ * <p>
+ * Rather than searching the entire palette for each pixel as
+ * {@link MapPalette#matchColor(Color)} does, a lookup table is built
+ * once from the palette at a reduced precision of 6 bits per channel.
+ * Each cell of the table holds the few palette colors that are closest
+ * to the center of the cell and, when a pixel is matched, the closest of
+ * those to the exact color is chosen. This refinement keeps the result
+ * identical to a full search for all but the rare colors that lie almost
+ * exactly between palette colors.
+ * <p>
+ * Matching is done using the same weighted distance that Bukkit
+ * uses so that the results remain visually consistent with it.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+final class ColorMatcher {
+
+    private static final int BITS = 6, SHIFT = 8 - BITS, CANDIDATES = 4;
+    private static final int FIRST_COLOR = 4; // The first 4 colors are transparent
+
+    private final int[] red, green, blue;
+    private final byte[] candidates;
+
+    private ColorMatcher(List<Color> palette) {
+
+        int size = palette.size();
+        this.red = new int[size];
+        this.green = new int[size];
+        this.blue = new int[size];
+        for (int i = 0; i < size; i++) {
+            Color color = palette.get(i);
+            this.red[i] = color.getRed();
+            this.green[i] = color.getGreen();
+            this.blue[i] = color.getBlue();
+        }
+
+        int cells = 1 << BITS * 3, half = 1 << SHIFT - 1;
+        int[] closest = new int[CANDIDATES];
+        double[] distances = new double[CANDIDATES];
+        this.candidates = new byte[cells * CANDIDATES];
+        for (int cell = 0; cell < cells; cell++) {
+
+            int r = (cell >> BITS * 2 & (1 << BITS) - 1) << SHIFT | half;
+            int g = (cell >> BITS & (1 << BITS) - 1) << SHIFT | half;
+            int b = (cell & (1 << BITS) - 1) << SHIFT | half;
+            Arrays.fill(closest, FIRST_COLOR);
+            Arrays.fill(distances, Double.MAX_VALUE);
+            for (int i = FIRST_COLOR; i < size; i++) {
+                // Insertion sort the color into the closest candidates
+                double distance = this.distance(r, g, b, i);
+                for (int j = 0; j < CANDIDATES; j++) {
+
+                    if (distance < distances[j]) {
+                        System.arraycopy(closest, j, closest, j + 1, CANDIDATES - j - 1);
+                        System.arraycopy(distances, j, distances, j + 1, CANDIDATES - j - 1);
+                        closest[j] = i;
+                        distances[j] = distance;
+                        break;
+                    }
+                }
+            }
+
+            for (int j = 0; j < CANDIDATES; j++) {
+                this.candidates[cell * CANDIDATES + j] = (byte) closest[j];
+            }
+        }
+    }
+
+    /**
+     * Get the shared instance of the matcher, building
+     * it from the palette if it has not yet been built.
+     *
+     * @return The color matcher.
+     */
+    static ColorMatcher getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Match each of the given ARGB colors to the closest
+     * color in the map palette.
+     *
+     * @param argb The colors to match.
+     * @return The palette indices of the matched colors.
+     */
+    byte[] match(int[] argb) {
+
+        byte[] colors = new byte[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            colors[i] = this.match(argb[i]);
+        }
+
+        return colors;
+    }
+
+    /**
+     * Match the given ARGB color to the closest color
+     * in the map palette.
+     *
+     * @param argb The color to match.
+     * @return The palette index of the matched color.
+     */
+    byte match(int argb) {
+
+        if (argb >>> 24 < 128) {
+            return 0; // Transparent
+        }
+
+        int r = argb >> 16 & 0xFF, g = argb >> 8 & 0xFF, b = argb & 0xFF;
+        int offset = ((r >> SHIFT) << BITS * 2 | (g >> SHIFT) << BITS | b >> SHIFT) * CANDIDATES;
+        int closest = this.candidates[offset] & 0xFF;
+        double closestDistance = this.distance(r, g, b, closest);
+        for (int j = 1; j < CANDIDATES; j++) {
+            // Prefer the lowest index on a tie the same as Bukkit
+            int index = this.candidates[offset + j] & 0xFF;
+            double distance = this.distance(r, g, b, index);
+            if (distance < closestDistance || distance == closestDistance && index < closest) {
+                closest = index;
+                closestDistance = distance;
+            }
+        }
+
+        return (byte) closest;
+    }
+
+    private double distance(int r, int g, int b, int index) {
+        double mean = (r + this.red[index]) / 2.0;
+        double dr = r - this.red[index];
+        double dg = g - this.green[index];
+        int db = b - this.blue[index];
+        return (2 + mean / 256.0) * dr * dr + 4.0 * dg * dg + (2 + (255 - mean) / 256.0) * db * db;
+    }
+
+    private static ColorMatcher load() {
+
+        List<Color> palette = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+
+            try {
+                //noinspection deprecation
+                palette.add(MapPalette.getColor((byte) i));
+            } catch (IndexOutOfBoundsException e) {
+                break; // The end of the palette for this version
+            }
+        }
+
+        return new ColorMatcher(palette);
+    }
+
+    private static final class Holder {
+
+        static final ColorMatcher INSTANCE = load();
+    }
+}
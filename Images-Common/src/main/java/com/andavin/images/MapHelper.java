@@ -30,6 +30,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.map.MapView;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * @since September 20, 2019
@@ -38,6 +39,7 @@ import java.awt.image.BufferedImage;
 public abstract class MapHelper implements Versioned {
 
     protected static boolean invisible = true;
+    protected static boolean preEncode;
     public static int showDistance = 64;
     public static int hideDistance = 128;
     private static final MapHelper BRIDGE = Versioned.getInstance(MapHelper.class);
@@ -63,20 +65,125 @@ public abstract class MapHelper implements Versioned {
     }
 
     /**
-     * Create and send a new map to the given player to be displayed
-     * with the given information.
+     * Create the packets that will spawn an item frame holding
+     * the given map when sent to a player. The map data itself
+     * is not included in these packets.
      *
-     * @param player The player to display the map to.
      * @param frameId The ID of the item frame for the map.
      * @param mapId The ID of the map to display.
      * @param location The location to display the map at.
      * @param direction The direction to face the map.
      * @param rotation The rotation to put the map in the display at.
+     * @return The packets to spawn the item frame.
+     * @see #getMapPacket(int, byte[])
+     */
+    public static Object[] getFramePackets(int frameId, int mapId, Location location,
+                                           BlockFace direction, int rotation) {
+        return BRIDGE.createFrame(frameId, mapId, location, direction, rotation);
+    }
+
+    /**
+     * Create the packet that will send the pixels of the
+     * given map to a player.
+     *
+     * @param mapId The ID of the map.
      * @param pixels The pixels to show on the map.
+     * @return The map data packet.
+     */
+    public static Object getMapPacket(int mapId, byte[] pixels) {
+        return BRIDGE.createMapData(mapId, pixels);
+    }
+
+    /**
+     * Send all of the given packets to the player together.
+     * <p>
+     * Where the version supports it the packets will be sent
+     * in bundles, otherwise they are all written to the connection
+     * before it is flushed a single time.
+     *
+     * @param player The player to send the packets to.
+     * @param packets The packets to send.
+     */
+    public static void sendPackets(Player player, List<Object> packets) {
+
+        if (packets.isEmpty()) {
+            return;
+        }
+
+        try {
+            BRIDGE.send(player, packets);
+        } catch (RuntimeException e) {
+            // Nothing is handed to the connection if sending fails
+            discardPackets(packets);
+            throw e;
+        }
+    }
+
+    /**
+     * Release any {@link #duplicatePacket(Player, Object) views}
+     * of encoded packets among the given packets that will not
+     * be {@link #sendPackets(Player, List) sent} after all.
+     *
+     * @param packets The packets that will not be sent.
+     */
+    public static void discardPackets(List<Object> packets) {
+
+        for (Object packet : packets) {
+            BRIDGE.discard(packet);
+        }
+    }
+
+    /**
+     * Tell if the connection of the given player can currently
+     * accept more data without it building up in memory.
+     *
+     * @param player The player to check.
+     * @return If more packets can be sent to the player.
+     */
+    public static boolean canSend(Player player) {
+        return BRIDGE.isWritable(player);
+    }
+
+    /**
+     * Encode the given packet into a buffer that can be written
+     * directly to the connection of any player in place of the
+     * packet itself.
+     * <p>
+     * The buffer is only created if pre-encoding is enabled and
+     * supported by this version, otherwise {@code null} is returned
+     * and the packet should be sent as it is. Once the buffer is
+     * no longer needed it must be {@link #releasePacket(Object) released}.
+     *
+     * @param player The player whose connection should encode the packet.
+     * @param packet The packet to encode.
+     * @return The encoded packet or {@code null} if it was not encoded.
      */
-    public static void createMap(Player player, int frameId, int mapId, Location location,
-                                 BlockFace direction, int rotation, byte[] pixels) {
-        BRIDGE.createMap(frameId, mapId, player, location, direction, rotation, pixels);
+    public static Object encodePacket(Player player, Object packet) {
+        return preEncode ? BRIDGE.encode(player, packet) : null;
+    }
+
+    /**
+     * Create a view of an {@link #encodePacket(Player, Object) encoded}
+     * packet that may be added to the packets {@link #sendPackets(Player, List)
+     * sent} to the player. Each view is released once it has been written.
+     *
+     * @param player The player that the packet will be sent to.
+     * @param encoded The encoded packet.
+     * @return The view of the encoded packet or {@code null} if it cannot
+     *         be written to the given player and the packet should be sent.
+     */
+    public static Object duplicatePacket(Player player, Object encoded) {
+        return BRIDGE.duplicate(player, encoded);
+    }
+
+    /**
+     * Release the memory held by an {@link #encodePacket(Player, Object)
+     * encoded} packet.
+     *
+     * @param encoded The encoded packet to release.
+     */
+    public static void releasePacket(Object encoded) {
+        BRIDGE.release(encoded);
     }
 
     /**
@@ -118,19 +225,91 @@ public abstract class MapHelper implements Versioned {
     protected abstract int nextMapId(World world);
 
     /**
-     * Create and send a new map to the given player to be displayed
-     * with the given information.
+     * Create the packets that will spawn an item frame holding
+     * the given map when sent to a player.
      *
      * @param frameId The ID of the item frame for the map.
      * @param mapId The ID of the map to display.
-     * @param player The player to display the map to.
      * @param location The location to display the map at.
      * @param direction The direction to face the map.
      * @param rotation The rotation to put the map in the display at.
+     * @return The packets to spawn the item frame.
+     */
+    protected abstract Object[] createFrame(int frameId, int mapId, Location location,
+                                            BlockFace direction, int rotation);
+
+    /**
+     * Create the packet that will send the pixels of the
+     * given map to a player.
+     *
+     * @param mapId The ID of the map.
      * @param pixels The pixels to show on the map.
+     * @return The map data packet.
+     */
+    protected abstract Object createMapData(int mapId, byte[] pixels);
+
+    /**
+     * Send all of the given packets to the player flushing
+     * the connection as few times as possible.
+     *
+     * @param player The player to send the packets to.
+     * @param packets The packets to send.
+     */
+    protected abstract void send(Player player, List<Object> packets);
+
+    /**
+     * Tell if the connection of the given player can currently
+     * accept more data without it building up in memory.
+     *
+     * @param player The player to check.
+     * @return If the connection is writable.
      */
-    protected abstract void createMap(int frameId, int mapId, Player player, Location location,
-                                      BlockFace direction, int rotation, byte[] pixels);
+    protected abstract boolean isWritable(Player player);
+
+    /**
+     * Encode the given packet through the connection of the
+     * player into a buffer that is written in place of the packet.
+     * <p>
+     * By default, versions do not support encoding packets
+     * ahead of time and {@code null} is returned.
+     *
+     * @param player The player whose connection should encode the packet.
+     * @param packet The packet to encode.
+     * @return The encoded packet or {@code null} if it was not encoded.
+     */
+    protected Object encode(Player player, Object packet) {
+        return null;
+    }
+
+    /**
+     * Create a retained view of the encoded packet that will be
+     * released when it is written to the connection of the player.
+     *
+     * @param player The player that the packet will be sent to.
+     * @param encoded The encoded packet.
+     * @return The view of the encoded packet or {@code null} if it
+     *         cannot be written to the player.
+     */
+    protected Object duplicate(Player player, Object encoded) {
+        return null;
+    }
+
+    /**
+     * Release the memory held by an encoded packet.
+     *
+     * @param encoded The encoded packet to release.
+     */
+    protected void release(Object encoded) {
+    }
+
+    /**
+     * Release the given packet if it is a view of an encoded packet
+     * that was created to be sent, but will not be written after all.
+     *
+     * @param packet The packet that will not be sent.
+     */
+    protected void discard(Object packet) {
+    }
 
     /**
      * Destroy all of the maps with the given IDs for
@@ -144,9 +323,17 @@ public abstract class MapHelper implements Versioned {
     /**
      * Transition the given {@link BufferedImage} into
      * bytes that each represent a pixel color.
+     * <p>
+     * The colors are matched to the map palette of the running
+     * version by the shared {@link ColorMatcher} so that no
+     * objects are allocated for any individual pixel.
      *
      * @param image The image to get pixels for.
      * @return The pixels for the image.
      */
-    protected abstract byte[] createPixels(BufferedImage image);
+    protected byte[] createPixels(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, new int[width * height], 0, width);
+        return ColorMatcher.getInstance().match(pixels);
+    }
 }
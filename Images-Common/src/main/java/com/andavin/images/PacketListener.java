@@ -25,12 +25,11 @@ package com.andavin.images;
 
 import com.andavin.images.image.CustomImage;
 import com.andavin.images.image.CustomImageSection;
+import com.andavin.images.image.SectionRegistry;
 import com.andavin.util.Scheduler;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 
-import java.util.List;
-import java.util.function.Supplier;
-
 import static com.andavin.images.image.CustomImageSection.DEFAULT_STARTING_ID;
 
 /**
@@ -39,8 +38,6 @@ import static com.andavin.images.image.CustomImageSection.DEFAULT_STARTING_ID;
  */
 public abstract class PacketListener<T, U> implements Versioned {
 
-    static Supplier<List<CustomImage>> getImages;
-
     /**
      * Set a new entity listener to the given player's
      * packet listener.
@@ -73,28 +70,15 @@ public abstract class PacketListener<T, U> implements Versioned {
 
     /**
      * Get the {@link CustomImageSection} that has the
-     * map ID from an {@link CustomImage}.
+     * map ID in the given world from an {@link CustomImage}.
      *
+     * @param world The world that the map ID belongs to.
      * @param mapId The map ID to get the section for.
      * @return The section or {@code null} if the
      *         section is not found.
      */
-    public static CustomImageSection getImageSection(int mapId) {
-
-        List<CustomImage> images = getImages.get();
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (images) {
-
-            for (CustomImage image : images) {
-
-                CustomImageSection section = image.getSectionByMap(mapId);
-                if (section != null) {
-                    return section;
-                }
-            }
-
-            return null;
-        }
+    public static CustomImageSection getImageSection(World world, int mapId) {
+        return SectionRegistry.getByMapId(world, mapId);
     }
 
     /**
@@ -106,21 +90,7 @@ public abstract class PacketListener<T, U> implements Versioned {
      *         section is not found.
      */
     public static CustomImageSection getImageSectionByEntityId(int frameId) {
-
-        List<CustomImage> images = getImages.get();
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (images) {
-
-            for (CustomImage image : images) {
-
-                CustomImageSection section = image.getSection(frameId);
-                if (section != null) {
-                    return section;
-                }
-            }
-
-            return null;
-        }
+        return SectionRegistry.getByFrameId(frameId);
     }
 
     /**
@@ -138,22 +108,10 @@ public abstract class PacketListener<T, U> implements Versioned {
             return;
         }
 
-        Scheduler.async(() -> {
-
-            List<CustomImage> images = getImages.get();
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (images) {
-
-                for (CustomImage image : images) {
-
-                    CustomImageSection section = image.getSection(entityId);
-                    if (section != null) {
-                        listener.click(player, image, section, action, hand);
-                        return;
-                    }
-                }
-            }
-        });
+        CustomImageSection section = SectionRegistry.getByFrameId(entityId);
+        if (section != null) {
+            Scheduler.io(() -> listener.click(player, section.getImage(), section, action, hand));
+        }
     }
 
     public enum Hand {
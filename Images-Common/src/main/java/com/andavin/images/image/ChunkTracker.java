@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import com.andavin.reflect.Reflection;
+import com.andavin.reflect.exception.UncheckedClassNotFoundException;
+import com.andavin.util.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Keeps each {@link Viewer} up to date with the chunks that
+ * its client has actually been sent so that sections are only
+ * shown once the chunk they are in is there to show them in.
+ * <p>
+ * This relies on the player chunk load and unload events that
+ * are added by Paper. When they are not available, viewers fall
+ * back to assuming that the client has every chunk within its
+ * view distance.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class ChunkTracker implements Listener {
+
+    private static final String LOAD_EVENT = "io.papermc.paper.event.packet.PlayerChunkLoadEvent";
+    private static final String UNLOAD_EVENT = "io.papermc.paper.event.packet.PlayerChunkUnloadEvent";
+
+    private final SpatialIndex index;
+    private final VisibilityService visibility;
+
+    /**
+     * Create a new tracker that shows and hides the sections
+     * in the given index as chunks are sent to players.
+     *
+     * @param index The index to find the sections in a chunk from.
+     * @param visibility The service to refresh players with.
+     */
+    public ChunkTracker(SpatialIndex index, VisibilityService visibility) {
+        this.index = index;
+        this.visibility = visibility;
+    }
+
+    /**
+     * Start listening for chunks being sent to and removed
+     * from players if the server supports it.
+     *
+     * @param plugin The plugin to register the listeners for.
+     * @return If chunks are being tracked or {@code false} if
+     *         the server does not fire the needed events.
+     */
+    public boolean register(Plugin plugin) {
+
+        Class<? extends Event> load, unload;
+        try {
+            load = Reflection.findClass(LOAD_EVENT);
+            unload = Reflection.findClass(UNLOAD_EVENT);
+        } catch (UncheckedClassNotFoundException e) {
+            Viewer.chunkEvents = false;
+            return false;
+        }
+
+        Method loadPlayer = Reflection.findMethod(load, "getPlayer");
+        Method loadChunk = Reflection.findMethod(load, "getChunk");
+        Method unloadPlayer = Reflection.findMethod(unload, "getPlayer");
+        Method unloadChunk = Reflection.findMethod(unload, "getChunk");
+        Bukkit.getPluginManager().registerEvent(load, this, EventPriority.MONITOR, (listener, event) -> {
+
+            if (load.isInstance(event)) {
+                this.load(Reflection.invokeMethod(loadPlayer, event), Reflection.invokeMethod(loadChunk, event));
+            }
+        }, plugin, false);
+        Bukkit.getPluginManager().registerEvent(unload, this, EventPriority.MONITOR, (listener, event) -> {
+
+            if (unload.isInstance(event)) {
+                this.unload(Reflection.invokeMethod(unloadPlayer, event), Reflection.invokeMethod(unloadChunk, event));
+            }
+        }, plugin, false);
+        Viewer.chunkEvents = true;
+        Logger.info("Showing images once their chunks are sent to players");
+        return true;
+    }
+
+    private void load(Player player, Chunk chunk) {
+
+        if (Viewer.get(player).loadChunk(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ()) &&
+                this.index.get(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ()) != null) {
+            // Only refresh if there is anything in the chunk to show
+            this.visibility.markDirty(player);
+        }
+    }
+
+    private void unload(Player player, Chunk chunk) {
+        // The client drops the frames along with the chunk
+        // so they only need to be forgotten here
+        CustomImageSection[] sections = this.index.get(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ());
+        Viewer.get(player).unloadChunk(chunk.getX(), chunk.getZ(),
+                sections != null ? Arrays.asList(sections) : null);
+    }
+}
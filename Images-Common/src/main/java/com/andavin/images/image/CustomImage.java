@@ -23,7 +23,6 @@
  */
 package com.andavin.images.image;
 
-import com.andavin.images.MapHelper;
 import com.andavin.util.LocationUtil;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -68,11 +67,15 @@ public class CustomImage implements Serializable {
 
     public CustomImage(UUID creator, String imageName, Location location,
                        BlockFace direction, BufferedImage image) {
+        this(creator, imageName, location, direction);
+        this.update(image);
+    }
+
+    CustomImage(UUID creator, String imageName, Location location, BlockFace direction) {
         this.imageName = imageName;
         this.direction = direction;
         this.location = location;
         this.creator = creator;
-        this.update(image);
     }
 
     /**
@@ -115,6 +118,16 @@ public class CustomImage implements Serializable {
         return imageName;
     }
 
+    /**
+     * Get the {@link Location} that this image was
+     * originally placed at.
+     *
+     * @return The image location.
+     */
+    public Location getLocation() {
+        return location;
+    }
+
     /**
      * Get the direction in which this image is facing.
      *
@@ -124,6 +137,16 @@ public class CustomImage implements Serializable {
         return direction;
     }
 
+    /**
+     * Get an unmodifiable view of all of the
+     * {@link CustomImageSection sections} in this image.
+     *
+     * @return The sections of this image.
+     */
+    public Collection<CustomImageSection> getSections() {
+        return Collections.unmodifiableCollection(this.sections.values());
+    }
+
     /**
      * Get the {@link CustomImageSection} that has the
      * entity item frame ID in this image.
@@ -157,29 +180,16 @@ public class CustomImage implements Serializable {
     }
 
     /**
-     * Show or hide this image for a player if they are within
-     * 64 blocks or outside of 128 blocks of any of its sections.
+     * Show or hide the sections of this image for a player if
+     * they are within the {@link Viewer#getShowDistance() show distance}
+     * or beyond the {@link Viewer#getHideDistance() hide distance}
+     * of that player respectively.
      *
      * @param player The player to show the image to.
      * @param location The location of the player to measure the distance from.
      */
     public void refresh(Player player, Location location) {
-
-        for (CustomImageSection section : this.sections.values()) {
-
-            boolean sameWorld = location != null && section.getLocation().getWorld().equals(location.getWorld());
-            if (sameWorld) {
-
-                double distance = section.getLocation().distanceSquared(location);
-                if (distance <= MapHelper.showDistance * MapHelper.showDistance) {
-                    section.show(player);
-                } else if (distance > MapHelper.hideDistance * MapHelper.hideDistance) {
-                    section.hide(player);
-                }
-            } else {
-                section.hide(player);
-            }
-        }
+        Viewer.get(player).refresh(location, this.sections.values());
     }
 
     /**
@@ -191,47 +201,80 @@ public class CustomImage implements Serializable {
      *               should be hidden from them.
      */
     public void remove(Player player, boolean online) {
-
-        for (CustomImageSection section : this.sections.values()) {
-
-            if (online) {
-                section.hide(player);
-            } else {
-                section.shown.remove(player.getUniqueId());
-            }
-        }
+        Viewer.get(player).hide(this.sections.values(), online);
     }
 
     /**
      * Destroy all of the sections of this image and hide it
      * from all players that it has been shown to if they are
      * currently online.
+     * <p>
+     * This should only be called once the image has been removed
+     * from anywhere that it could be found to be shown again.
      *
      * @return The players that the image was hidden from.
      */
     public Set<Player> destroy() {
 
-        int sections = this.sections.size();
-        if (sections != 0) {
+        if (this.sections.isEmpty()) {
+            return emptySet();
+        }
 
-            int index = 0;
-            int[] ids = new int[sections];
-            Set<Player> players = new HashSet<>(sections);
-            for (CustomImageSection section : this.sections.values()) {
-                ids[index++] = section.getFrameId();
-                section.shown.stream().map(Bukkit::getPlayer)
-                        .filter(Objects::nonNull).forEach(players::add);
-            }
+        Collection<CustomImageSection> sections = new ArrayList<>(this.sections.values());
+        this.sections.clear();
+        return destroySections(sections);
+    }
 
-            for (Player player : players) {
-                MapHelper.destroyMaps(player, ids);
-            }
+    /**
+     * Destroy all of the given images at once so that each
+     * player that any of them have been shown to is sent a
+     * single removal of all of their sections.
+     * <p>
+     * This should only be called once the images have been removed
+     * from anywhere that they could be found to be shown again.
+     *
+     * @param images The images to destroy.
+     */
+    public static void destroy(Collection<CustomImage> images) {
 
-            this.sections.clear();
-            return players;
+        Collection<CustomImageSection> sections = new ArrayList<>();
+        for (CustomImage image : images) {
+            sections.addAll(image.sections.values());
+            image.sections.clear();
         }
 
-        return emptySet();
+        if (!sections.isEmpty()) {
+            destroySections(sections);
+        }
+    }
+
+    private static Set<Player> destroySections(Collection<CustomImageSection> sections) {
+
+        // Stop any viewer from showing the sections first, then clear them
+        // from each viewer under its lock, and only then free their slots
+        // so that no viewer can be left holding a slot that is reused
+        sections.forEach(CustomImageSection::invalidate);
+        Set<Player> players = new HashSet<>();
+        for (Viewer viewer : Viewer.getViewers()) {
+
+            if (viewer.hide(sections, true)) {
+                players.add(viewer.getPlayer());
+            }
+        }
+
+        sections.forEach(CustomImageSection::releaseSlot);
+        return players;
+    }
+
+    /**
+     * Add a section that has already been created
+     * to this image.
+     *
+     * @param section The section to add.
+     */
+    void addSection(CustomImageSection section) {
+        section.image = this;
+        this.sections.put(section.getFrameId(), section);
     }
 
     /**
@@ -326,7 +369,7 @@ public class CustomImage implements Serializable {
                 CustomImageSection section = new CustomImageSection(loc, direction,
                         rotation, image.getSubimage(x * PIXELS_PER_FRAME, y * PIXELS_PER_FRAME,
                         PIXELS_PER_FRAME, PIXELS_PER_FRAME));
-                this.sections.put(section.getFrameId(), section);
+                this.addSection(section);
             }
         }
 
@@ -394,7 +437,7 @@ public class CustomImage implements Serializable {
         CustomImageSection[] sections = this.sections.values().toArray(new CustomImageSection[0]);
         this.sections.clear();
         for (CustomImageSection section : sections) {
-            this.sections.put(section.getFrameId(), section);
+            this.addSection(section);
         }
     }
 
@@ -33,9 +33,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.andavin.images.image.CustomImage.readLocation;
@@ -61,15 +60,33 @@ public class CustomImageSection implements Serializable {
 
     private transient Location location;
     private transient int frameId, mapId; // Should not be
-    transient Set<UUID> shown = new HashSet<>();
+    private transient volatile Object[] packets;
+    private transient volatile int slot = -1;
+    private transient Object encoded;
+    private transient volatile boolean released;
+    transient CustomImage image;
 
     CustomImageSection(Location location, BlockFace direction, int rotation, BufferedImage image) {
+        this(location, direction, rotation, MapHelper.getPixels(image));
+    }
+
+    CustomImageSection(Location location, BlockFace direction, int rotation, byte[] pixels) {
         this.rotation = rotation;
         this.frameId = ID_COUNTER.getAndIncrement();
         this.mapId = MapHelper.getNextMapId(location.getWorld());
         this.location = location;
         this.direction = direction;
-        this.pixels = MapHelper.getPixels(image);
+        this.pixels = pixels;
+    }
+
+    /**
+     * Get the {@link CustomImage} that this section
+     * is a part of.
+     *
+     * @return The image of this section.
+     */
+    public CustomImage getImage() {
+        return image;
     }
 
     /**
@@ -136,10 +153,7 @@ public class CustomImageSection implements Serializable {
      * @param player The player to show to.
      */
     public void show(Player player) {
-
-        if (this.shown.add(player.getUniqueId())) {
-            MapHelper.createMap(player, this.frameId, this.mapId, this.location, this.direction, this.rotation, this.pixels);
-        }
+        Viewer.get(player).show(this);
     }
 
     /**
@@ -148,10 +162,173 @@ public class CustomImageSection implements Serializable {
      * @param player The player to hide from.
      */
     public void hide(Player player) {
+        Viewer.get(player).hide(this);
+    }
+
+    /**
+     * Tell if this section is in the same world and within
+     * the given distance of a {@link Location}.
+     *
+     * @param location The location to measure the distance from.
+     * @param distance The distance to test within.
+     * @return If this section is within the distance.
+     */
+    boolean isWithin(Location location, int distance) {
+        return location != null && this.location.getWorld().equals(location.getWorld()) &&
+                this.location.distanceSquared(location) <= distance * distance;
+    }
+
+    /**
+     * Tell if the map of this section faces toward the given
+     * location or is at most the given margin behind its plane.
+     * <p>
+     * Item frames can only be seen from the side that they face,
+     * so a section that is behind the location cannot be seen.
+     *
+     * @param location The location to test.
+     * @param margin The blocks behind the plane of the map that
+     *               still count as facing it.
+     * @return If this section faces the location.
+     */
+    boolean isFacing(Location location, double margin) {
+        // The map lies against the back of its block and
+        // faces out of it in the direction of the section
+        BlockFace face = this.direction;
+        double x = location.getX() - (this.location.getBlockX() + 0.5 - face.getModX() * 0.5);
+        double y = location.getY() - (this.location.getBlockY() + 0.5 - face.getModY() * 0.5);
+        double z = location.getZ() - (this.location.getBlockZ() + 0.5 - face.getModZ() * 0.5);
+        return x * face.getModX() + y * face.getModY() + z * face.getModZ() >= -margin;
+    }
+
+    /**
+     * Add the packets that spawn the item frame and send the
+     * map of this section to the given list.
+     * <p>
+     * Nothing in the packets depends on the player they are
+     * sent to, so they are created the first time they are
+     * needed and then shared by every viewer of this section
+     * until it is {@link #invalidate() invalidated}. If packets
+     * are {@link MapHelper#encodePacket(Player, Object) pre-encoded}
+     * then the map data is only encoded once as well.
+     * <p>
+     * Nothing is added once this section has been
+     * {@link #invalidate() invalidated}.
+     *
+     * @param player The player that the packets will be sent to.
+     * @param packets The list to add the packets to.
+     * @param pixels If the map data should be added or only the frame
+     *               because the player already has the pixels of the map.
+     */
+    void addPackets(Player player, List<Object> packets, boolean pixels) {
+
+        if (this.released) {
+            return;
+        }
+
+        Object[] cached = this.packets;
+        if (cached == null) {
+            // Creating the packets twice in a race is harmless
+            Object[] frame = MapHelper.getFramePackets(this.frameId,
+                    this.mapId, this.location, this.direction, this.rotation);
+            cached = Arrays.copyOf(frame, frame.length + 1);
+            cached[frame.length] = MapHelper.getMapPacket(this.mapId, this.pixels);
+            synchronized (this) {
+
+                // Never cache the packets again once they have been released
+                if (this.released) {
+                    return;
+                }
+
+                this.packets = cached;
+            }
+        }
+
+        int last = cached.length - 1;
+        packets.addAll(Arrays.asList(cached).subList(0, last));
+        if (pixels) {
+            Object encoded = this.getEncoded(player, cached[last]);
+            packets.add(encoded != null ? encoded : cached[last]);
+        }
+    }
+
+    /**
+     * Get the {@link SectionSlots slot} of this section taking
+     * one the first time this is called.
+     *
+     * @return The slot or {@code -1} if this section was
+     *         {@link #invalidate() invalidated} before it took
+     *         one or its slot has been released.
+     */
+    int getSlot() {
+
+        int slot = this.slot;
+        if (slot < 0) {
+
+            synchronized (this) {
+
+                slot = this.slot;
+                if (slot < 0 && !this.released) {
+                    this.slot = slot = SectionSlots.acquire(this);
+                }
+            }
+        }
+
+        return slot;
+    }
+
+    /**
+     * Tell if this section has been {@link #invalidate() invalidated}
+     * and may no longer be shown to any viewer.
+     *
+     * @return If this section has been invalidated.
+     */
+    boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Release the cached packets of this section along with
+     * any encoded map data once it will no longer be shown.
+     * <p>
+     * Viewers will not show this section after this, but it keeps
+     * its slot until {@link #releaseSlot()} so that any viewer that
+     * is still showing it can hide it first.
+     */
+    void invalidate() {
+
+        synchronized (this) {
+
+            this.released = true;
+            this.packets = null;
+            if (this.encoded != null) {
+                MapHelper.releasePacket(this.encoded);
+                this.encoded = null;
+            }
+        }
+    }
+
+    /**
+     * Free the {@link SectionSlots slot} of this section so that
+     * another section may use it. This must only be done once
+     * this section is {@link #invalidate() invalidated} and every
+     * viewer has hidden it.
+     */
+    synchronized void releaseSlot() {
+
+        if (this.slot >= 0) {
+            SectionSlots.release(this.slot);
+            this.slot = -1;
+        }
+    }
+
+    private synchronized Object getEncoded(Player player, Object packet) {
 
-        if (this.shown.remove(player.getUniqueId())) {
-            MapHelper.destroyMaps(player, this.frameId);
+        if (this.encoded == null && !this.released) {
+            this.encoded = MapHelper.encodePacket(player, packet);
         }
+        // Duplicate while holding the lock so that the
+        // buffer cannot be released before it is retained
+        return this.encoded != null ? MapHelper.duplicatePacket(player, this.encoded) : null;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -162,8 +339,8 @@ public class CustomImageSection implements Serializable {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         this.location = readLocation(in);
+        this.slot = -1;
         this.frameId = ID_COUNTER.getAndIncrement();
         this.mapId = MapHelper.getNextMapId(location.getWorld());
-        this.shown = new HashSet<>();
     }
 }
@@ -0,0 +1,270 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A compact, versioned binary format for {@link CustomImage CustomImages}
+ * that replaces the old Java {@link Serializable} format.
+ * <p>
+ * Every encoded image begins with the {@link #MAGIC} integer followed
+ * by a single byte format version so that the layout can be changed
+ * later on without breaking any data that has already been stored.
+ * The current layout (version {@code 2}) is as follows:
+ * <pre>
+ *     int     magic ("CIMG")
+ *     byte    version
+ *     long    creator most significant bits
+ *     long    creator least significant bits
+ *     UTF     image name
+ *     UTF     world name
+ *     long    packed block position
+ *     float   yaw
+ *     float   pitch
+ *     UTF     direction name
+ *     int     section count
+ *     for each section:
+ *         long    packed block position
+ *         UTF     direction name
+ *         byte    rotation
+ *         int     pixel count
+ *         byte[]  raw map palette pixels
+ * </pre>
+ * Directions are written by name so that the data does not depend on
+ * the order of {@link BlockFace}. Version {@code 1} wrote the ordinal
+ * of each direction as a single byte instead and is still read.
+ * <p>
+ * Data that was written in the old Java serialization format is
+ * still able to be read by {@link #decode(byte[])} so that existing
+ * images can be migrated when they are next saved.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class ImageCodec {
+
+    /**
+     * The magic number that every encoded image begins with.
+     */
+    public static final int MAGIC = 0x43494D47; // CIMG
+    /**
+     * The format version that images are currently written in.
+     */
+    public static final byte VERSION = 2;
+
+    private static final byte ORDINAL_VERSION = 1;
+    // The order of BlockFace when version 1 was written
+    private static final BlockFace[] ORDINAL_FACES = {
+            BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST, BlockFace.UP,
+            BlockFace.DOWN, BlockFace.NORTH_EAST, BlockFace.NORTH_WEST, BlockFace.SOUTH_EAST,
+            BlockFace.SOUTH_WEST, BlockFace.WEST_NORTH_WEST, BlockFace.NORTH_NORTH_WEST,
+            BlockFace.NORTH_NORTH_EAST, BlockFace.EAST_NORTH_EAST, BlockFace.EAST_SOUTH_EAST,
+            BlockFace.SOUTH_SOUTH_EAST, BlockFace.SOUTH_SOUTH_WEST, BlockFace.WEST_SOUTH_WEST,
+            BlockFace.SELF
+    };
+    private static final int STREAM_MAGIC = 0xACED; // ObjectOutputStream.STREAM_MAGIC
+
+    private ImageCodec() {
+    }
+
+    /**
+     * Encode the given image into a new byte array in the
+     * {@link #VERSION current} format.
+     *
+     * @param image The image to encode.
+     * @return The encoded bytes.
+     */
+    public static byte[] encode(CustomImage image) {
+
+        Collection<CustomImageSection> sections = image.getSections();
+        // Each section is 128 * 128 pixels along with a small header
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(64 + sections.size() * 16400);
+        try (DataOutputStream stream = new DataOutputStream(byteStream)) {
+            write(stream, image);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return byteStream.toByteArray();
+    }
+
+    /**
+     * Decode an image from the given bytes. This will read
+     * both the {@link #VERSION current} format as well as
+     * images written in the legacy Java serialization format.
+     *
+     * @param bytes The bytes to decode.
+     * @return The decoded image.
+     * @throws UncheckedIOException If the data is malformed or in
+     *                              an unknown format version.
+     */
+    public static CustomImage decode(byte[] bytes) {
+
+        try {
+
+            if (isLegacy(bytes)) {
+
+                try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return (CustomImage) stream.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tell if the given data is in the legacy Java
+     * serialization format and should be rewritten.
+     *
+     * @param bytes The bytes to test.
+     * @return If the bytes are in the legacy format.
+     */
+    public static boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2 && ((bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF) == STREAM_MAGIC;
+    }
+
+    /**
+     * Write the given image to the output in the
+     * {@link #VERSION current} format.
+     *
+     * @param out The output to write to.
+     * @param image The image to write.
+     * @throws IOException If something goes wrong while writing.
+     */
+    public static void write(DataOutput out, CustomImage image) throws IOException {
+
+        UUID creator = image.getCreator();
+        Location location = image.getLocation();
+        Collection<CustomImageSection> sections = image.getSections();
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(creator.getMostSignificantBits());
+        out.writeLong(creator.getLeastSignificantBits());
+        out.writeUTF(image.getImageName());
+        out.writeUTF(location.getWorld().getName());
+        out.writeLong(pack(location));
+        out.writeFloat(location.getYaw());
+        out.writeFloat(location.getPitch());
+        out.writeUTF(image.getDirection().name());
+        out.writeInt(sections.size());
+        for (CustomImageSection section : sections) {
+            byte[] pixels = section.getPixels();
+            out.writeLong(pack(section.getLocation()));
+            out.writeUTF(section.getDirection().name());
+            out.writeByte(section.getRotation());
+            out.writeInt(pixels.length);
+            out.write(pixels);
+        }
+    }
+
+    /**
+     * Read an image that was written by {@link #write(DataOutput, CustomImage)}
+     * from the given input.
+     *
+     * @param in The input to read from.
+     * @return The image that was read.
+     * @throws IOException If something goes wrong while reading or
+     *                     the data is in an unknown format.
+     */
+    public static CustomImage read(DataInput in) throws IOException {
+
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("not an encoded image: " + Integer.toHexString(magic));
+        }
+
+        byte version = in.readByte();
+        if (version != VERSION && version != ORDINAL_VERSION) {
+            throw new IOException("unknown image format version " + version);
+        }
+
+        UUID creator = new UUID(in.readLong(), in.readLong());
+        String imageName = in.readUTF();
+        String worldName = in.readUTF();
+        World world = Bukkit.getWorld(worldName);
+        checkState(world != null, "unknown world with ID %s", worldName);
+        long position = in.readLong();
+        float yaw = in.readFloat(), pitch = in.readFloat();
+        Location location = unpack(world, position, yaw, pitch);
+        CustomImage image = new CustomImage(creator, imageName, location, readFace(in, version));
+        int sections = in.readInt();
+        for (int i = 0; i < sections; i++) {
+            Location sectionLocation = unpack(world, in.readLong(), yaw, pitch);
+            BlockFace direction = readFace(in, version);
+            int rotation = in.readByte();
+            byte[] pixels = new byte[in.readInt()];
+            in.readFully(pixels);
+            image.addSection(new CustomImageSection(sectionLocation, direction, rotation, pixels));
+        }
+
+        return image;
+    }
+
+    private static BlockFace readFace(DataInput in, byte version) throws IOException {
+
+        if (version == ORDINAL_VERSION) {
+
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= ORDINAL_FACES.length) {
+                throw new IOException("invalid direction " + ordinal);
+            }
+
+            return ORDINAL_FACES[ordinal];
+        }
+
+        String name = in.readUTF();
+        try {
+            return BlockFace.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid direction " + name, e);
+        }
+    }
+
+    // 26 bits X | 26 bits Z | 12 bits Y the same as the vanilla block position
+    private static long pack(Location location) {
+        return ((long) location.getBlockX() & 0x3FFFFFF) << 38 |
+                ((long) location.getBlockZ() & 0x3FFFFFF) << 12 |
+                (long) location.getBlockY() & 0xFFF;
+    }
+
+    private static Location unpack(World world, long packed, float yaw, float pitch) {
+        return new Location(world, (int) (packed >> 38),
+                (int) (packed << 52 >> 52), (int) (packed << 26 >> 38), yaw, pitch);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import com.andavin.util.Logger;
+import com.andavin.util.Scheduler;
+import org.bukkit.Location;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Watches the load of the server and the connections of players
+ * and temporarily reduces how far away and how quickly images are
+ * sent while the server is under pressure.
+ * <p>
+ * Every second, the controller looks at the average tick time,
+ * the deepest {@link Viewer#getQueuedCount() queue} of any viewer and
+ * how many viewers have connections that are not accepting more data.
+ * A slow tick raises both of its levels, a deep queue raises the
+ * {@link #getDistanceLevel() distance level} and blocked connections
+ * raise the {@link #getRateLevel() rate level}. Each level is lowered
+ * again one step at a time once there has been no pressure for a few
+ * seconds in a row.
+ * <p>
+ * Whenever the distance level changes, the queue of every viewer is
+ * trimmed to its new show distance. Otherwise sections queued before
+ * a reduction would stay queued until they passed the hide distance
+ * and a deep queue could keep the level raised long after the sections
+ * that caused it were out of reach.
+ * <p>
+ * The controller runs on the main thread, so it only reads the queue
+ * depth and blocked state that each viewer publishes after sending and
+ * trims the queues on the {@link Scheduler#cpu(Runnable) CPU pool}.
+ * It never waits for a viewer that is in the middle of being sent
+ * its sections, which is when the server is most likely to be slow.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class LoadController {
+
+    /**
+     * If the controller should react to load at all.
+     */
+    public static boolean enabled = true;
+
+    /**
+     * The average milliseconds per tick above which
+     * the server is considered to be under pressure.
+     */
+    public static double maxTickTime = 55;
+
+    /**
+     * The most sections that may be queued for a single viewer
+     * before the show distance is reduced. If this is not positive,
+     * then the queue depth is ignored.
+     */
+    public static int maxQueued = 512;
+
+    /**
+     * The highest level that the controller will reach.
+     */
+    public static final int MAX_LEVEL = 4;
+
+    /**
+     * The bytes per tick to start reducing from when
+     * the {@link Viewer#bandwidth} is unlimited.
+     */
+    private static final int UNLIMITED_BANDWIDTH = 1048576;
+    private static final int EVALUATE_TICKS = 20, CALM_EVALUATIONS = 3;
+
+    private static volatile int distanceLevel, rateLevel;
+    private static volatile double tickTime = 50;
+    private static volatile String reason = "none";
+    private static long lastTick;
+    private static int ticks, calmDistance, calmRate;
+    private static BukkitTask task;
+
+    private LoadController() {
+    }
+
+    /**
+     * Start measuring the load every tick.
+     */
+    public static void start() {
+
+        if (task == null) {
+            lastTick = 0;
+            task = Scheduler.repeat(LoadController::tick, 1, 1);
+        }
+    }
+
+    /**
+     * Stop measuring the load and restore the full
+     * distances and send rate.
+     */
+    public static void stop() {
+
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        distanceLevel = rateLevel = 0;
+        reason = "none";
+    }
+
+    /**
+     * Get the current level of reduction of the show
+     * distance from {@code 0} to {@link #MAX_LEVEL}.
+     *
+     * @return The distance level.
+     */
+    public static int getDistanceLevel() {
+        return distanceLevel;
+    }
+
+    /**
+     * Get the current level of reduction of the rate that
+     * sections are sent at from {@code 0} to {@link #MAX_LEVEL}.
+     *
+     * @return The rate level.
+     */
+    public static int getRateLevel() {
+        return rateLevel;
+    }
+
+    /**
+     * Get the average milliseconds per tick that
+     * has been measured recently.
+     *
+     * @return The average tick time.
+     */
+    public static double getTickTime() {
+        return tickTime;
+    }
+
+    /**
+     * Get the reason for the last time that either
+     * of the levels were changed.
+     *
+     * @return The reason for the last change.
+     */
+    public static String getReason() {
+        return reason;
+    }
+
+    /**
+     * Reduce the given show distance by the current
+     * {@link #getDistanceLevel() distance level}.
+     *
+     * @param distance The distance to reduce.
+     * @return The reduced distance.
+     */
+    static int scaleDistance(int distance) {
+        int level = distanceLevel;
+        return level == 0 ? distance : (int) (distance * (1 - 0.15 * level));
+    }
+
+    /**
+     * Reduce the given bytes per tick by the current
+     * {@link #getRateLevel() rate level}.
+     *
+     * @param bandwidth The bytes per tick to reduce.
+     * @return The reduced bytes per tick.
+     */
+    static int scaleBandwidth(int bandwidth) {
+
+        int level = rateLevel;
+        if (level == 0) {
+            return bandwidth;
+        }
+
+        return (bandwidth > 0 ? bandwidth : UNLIMITED_BANDWIDTH) >> level;
+    }
+
+    private static void tick() {
+
+        long now = System.nanoTime();
+        if (lastTick != 0) { // Smooth out single slow ticks
+            tickTime += ((now - lastTick) / 1e6 - tickTime) * 0.1;
+        }
+
+        lastTick = now;
+        if (++ticks >= EVALUATE_TICKS) {
+            ticks = 0;
+            evaluate();
+        }
+    }
+
+    private static void evaluate() {
+
+        if (!enabled) {
+            return;
+        }
+
+        int viewers = 0, deepest = 0, blocked = 0;
+        for (Viewer viewer : Viewer.getViewers()) {
+
+            viewers++;
+            deepest = Math.max(deepest, viewer.getQueuedCount());
+            if (viewer.isBlocked()) {
+                blocked++;
+            }
+        }
+
+        String distancePressure = null, ratePressure = null;
+        if (tickTime > maxTickTime) {
+            distancePressure = ratePressure = String.format("tick time %.1fms", tickTime);
+        } else {
+
+            if (maxQueued > 0 && deepest > maxQueued) {
+                distancePressure = "queue depth " + deepest;
+            }
+            // A few slow clients are handled by skipping them, but
+            // many at once means the server's own network is saturated
+            if (blocked > 0 && blocked * 4 >= viewers) {
+                ratePressure = blocked + " of " + viewers + " connections blocked";
+            }
+        }
+
+        if (distancePressure != null) {
+            calmDistance = 0;
+            if (distanceLevel < MAX_LEVEL) {
+                change("Distance", ++distanceLevel, distancePressure);
+                applyDistances();
+            }
+        } else if (distanceLevel > 0 && ++calmDistance >= CALM_EVALUATIONS) {
+            calmDistance = 0;
+            change("Distance", --distanceLevel, "no pressure");
+            applyDistances();
+        }
+
+        if (ratePressure != null) {
+            calmRate = 0;
+            if (rateLevel < MAX_LEVEL) {
+                change("Rate", ++rateLevel, ratePressure);
+            }
+        } else if (rateLevel > 0 && ++calmRate >= CALM_EVALUATIONS) {
+            calmRate = 0;
+            change("Rate", --rateLevel, "no pressure");
+        }
+    }
+
+    private static void applyDistances() {
+
+        for (Viewer viewer : Viewer.getViewers()) {
+            // Take the location here so the worker does not
+            // touch the player's position off of the main thread
+            Location location = viewer.getPlayer().getLocation();
+            if (!Scheduler.cpu(() -> viewer.applyDistances(location))) {
+                // The pool is full, but each viewer works out its
+                // distances again on its next refresh regardless
+                break;
+            }
+        }
+    }
+
+    private static void change(String name, int level, String cause) {
+        reason = name + " level " + level + " (" + cause + ')';
+        Logger.info("{} level of images changed to {} due to {}", name, level, cause);
+    }
+}
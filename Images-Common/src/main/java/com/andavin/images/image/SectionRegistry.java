@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A global registry of all of the {@link CustomImageSection sections}
+ * of the loaded images keyed by both their frame entity ID and
+ * their map ID.
+ * <p>
+ * Map IDs are allocated separately for each world, so the map ID
+ * tables are kept per world while frame entity IDs are global.
+ * <p>
+ * Lookups are constant time and never block so that they can
+ * be safely used while handling packets on the network threads.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class SectionRegistry {
+
+    private static volatile SectionTable frames = SectionTable.EMPTY;
+    private static volatile Map<UUID, SectionTable> maps = Collections.emptyMap();
+
+    private SectionRegistry() {
+    }
+
+    /**
+     * Register all of the sections of the given {@link CustomImage}
+     * so that they can be looked up by their IDs.
+     *
+     * @param image The image to register.
+     */
+    public static void register(CustomImage image) {
+        register(Collections.singletonList(image));
+    }
+
+    /**
+     * Register all of the sections of each of the given
+     * {@link CustomImage images} so that they can be looked
+     * up by their IDs.
+     *
+     * @param images The images to register.
+     */
+    public static synchronized void register(Collection<CustomImage> images) {
+
+        List<CustomImageSection> sections = new ArrayList<>();
+        Map<UUID, List<CustomImageSection>> byWorld = new HashMap<>(4);
+        for (CustomImage image : images) {
+            sections.addAll(image.getSections());
+            byWorld.computeIfAbsent(image.getLocation().getWorld().getUID(),
+                    __ -> new ArrayList<>()).addAll(image.getSections());
+        }
+
+        Map<UUID, SectionTable> maps = new HashMap<>(SectionRegistry.maps);
+        byWorld.forEach((world, worldSections) -> maps.put(world,
+                maps.getOrDefault(world, SectionTable.EMPTY).plus(worldSections, CustomImageSection::getMapId)));
+        frames = frames.plus(sections, CustomImageSection::getFrameId);
+        SectionRegistry.maps = maps;
+    }
+
+    /**
+     * Unregister all of the sections of the given {@link CustomImage}
+     * so that they can no longer be looked up.
+     *
+     * @param image The image to unregister.
+     */
+    public static synchronized void unregister(CustomImage image) {
+        frames = frames.minus(image.getSections());
+        UUID world = image.getLocation().getWorld().getUID();
+        SectionTable table = maps.get(world);
+        if (table != null) {
+            Map<UUID, SectionTable> maps = new HashMap<>(SectionRegistry.maps);
+            maps.put(world, table.minus(image.getSections()));
+            SectionRegistry.maps = maps;
+        }
+    }
+
+    /**
+     * Get the {@link CustomImageSection} that has the
+     * given item frame entity ID.
+     *
+     * @param frameId The frame ID to get the section for.
+     * @return The section or {@code null} if the
+     *         section is not found.
+     */
+    public static CustomImageSection getByFrameId(int frameId) {
+        return frames.get(frameId);
+    }
+
+    /**
+     * Get the {@link CustomImageSection} that has the
+     * given map ID in the given world.
+     *
+     * @param world The world that the map ID belongs to.
+     * @param mapId The map ID to get the section for.
+     * @return The section or {@code null} if the
+     *         section is not found.
+     */
+    public static CustomImageSection getByMapId(World world, int mapId) {
+        SectionTable table = maps.get(world.getUID());
+        return table != null ? table.get(mapId) : null;
+    }
+}
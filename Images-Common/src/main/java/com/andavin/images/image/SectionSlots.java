@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out small, densely packed integer slots to the
+ * {@link CustomImageSection sections} that are being shown
+ * so that each {@link Viewer} can track what it is shown in
+ * a {@link BitSet} rather than a set of section references.
+ * <p>
+ * Slots are reused once their section is released, so a section
+ * must be hidden from every viewer before its slot is released.
+ * Viewers read the slots without locking, so each element is
+ * published through an {@link AtomicReferenceArray}.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+final class SectionSlots {
+
+    private static final BitSet USED = new BitSet();
+    private static volatile AtomicReferenceArray<CustomImageSection> sections = new AtomicReferenceArray<>(64);
+
+    private SectionSlots() {
+    }
+
+    /**
+     * Get the section that currently holds the given slot.
+     *
+     * @param slot The slot to get the section for.
+     * @return The section or {@code null} if the slot is free.
+     */
+    static CustomImageSection get(int slot) {
+        AtomicReferenceArray<CustomImageSection> sections = SectionSlots.sections;
+        return slot < sections.length() ? sections.get(slot) : null;
+    }
+
+    /**
+     * Take the lowest free slot for the given section.
+     *
+     * @param section The section to take a slot for.
+     * @return The slot that was taken.
+     */
+    static synchronized int acquire(CustomImageSection section) {
+
+        int slot = USED.nextClearBit(0);
+        USED.set(slot);
+        AtomicReferenceArray<CustomImageSection> current = sections;
+        if (slot < current.length()) {
+            current.set(slot, section);
+            return slot;
+        }
+        // Fill the larger array before it is published
+        AtomicReferenceArray<CustomImageSection> grown = new AtomicReferenceArray<>(current.length() * 2);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+
+        grown.set(slot, section);
+        sections = grown;
+        return slot;
+    }
+
+    /**
+     * Free the given slot so that it can be used by
+     * another section.
+     *
+     * @param slot The slot to free.
+     */
+    static synchronized void release(int slot) {
+        sections.set(slot, null);
+        USED.clear(slot);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable open addressing hash table that maps primitive
+ * {@code int} keys to {@link CustomImageSection sections}
+ * without boxing any of the keys.
+ * <p>
+ * Modifications create a new table so that the table can be
+ * read from any thread without synchronization as long as it
+ * is published safely.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+final class SectionTable {
+
+    static final SectionTable EMPTY = new SectionTable(0, 0);
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private final int mask;
+    private final int[] keys;
+    private final CustomImageSection[] values;
+    private int size;
+
+    private SectionTable(int capacity, int size) {
+        this.mask = capacity - 1;
+        this.keys = new int[capacity];
+        this.values = new CustomImageSection[capacity];
+        this.size = size;
+    }
+
+    /**
+     * Get the {@link CustomImageSection} that is mapped
+     * to the given key in this table.
+     *
+     * @param key The key to get the section for.
+     * @return The section or {@code null} if there is
+     *         no section mapped to the key.
+     */
+    CustomImageSection get(int key) {
+
+        if (this.size == 0) {
+            return null;
+        }
+
+        for (int i = mix(key) & this.mask; ; i = i + 1 & this.mask) {
+
+            CustomImageSection value = this.values[i];
+            if (value == null) {
+                return null;
+            }
+
+            if (this.keys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Create a new table that contains all of the mappings of this
+     * table as well as the given sections mapped by their key.
+     * <p>
+     * If a key is already mapped, then the existing mapping is kept.
+     *
+     * @param sections The sections to add.
+     * @param key The function to retrieve the key of a section.
+     * @return The new table.
+     */
+    SectionTable plus(Collection<CustomImageSection> sections, ToIntFunction<CustomImageSection> key) {
+
+        SectionTable table = new SectionTable(capacityFor(this.size + sections.size()), 0);
+        this.copyTo(table, Collections.emptySet());
+        for (CustomImageSection section : sections) {
+            table.put(key.applyAsInt(section), section);
+        }
+
+        return table;
+    }
+
+    /**
+     * Create a new table that contains all of the mappings of this
+     * table except for those that map to any of the given sections.
+     *
+     * @param sections The sections to remove.
+     * @return The new table.
+     */
+    SectionTable minus(Collection<CustomImageSection> sections) {
+
+        if (this.size == 0) {
+            return this;
+        }
+
+        Set<CustomImageSection> removed = Collections.newSetFromMap(new IdentityHashMap<>(sections.size()));
+        removed.addAll(sections);
+        SectionTable table = new SectionTable(capacityFor(Math.max(this.size - sections.size(), 0)), 0);
+        this.copyTo(table, removed);
+        return table.size == 0 ? EMPTY : table;
+    }
+
+    private void copyTo(SectionTable table, Set<CustomImageSection> excluded) {
+
+        for (int i = 0; i < this.values.length; i++) {
+
+            CustomImageSection value = this.values[i];
+            if (value != null && !excluded.contains(value)) {
+                table.put(this.keys[i], value);
+            }
+        }
+    }
+
+    private void put(int key, CustomImageSection value) {
+
+        for (int i = mix(key) & this.mask; ; i = i + 1 & this.mask) {
+
+            if (this.values[i] == null) {
+                this.keys[i] = key;
+                this.values[i] = value;
+                this.size++;
+                return;
+            }
+
+            if (this.keys[i] == key) {
+                return;
+            }
+        }
+    }
+
+    private static int capacityFor(int size) {
+        // Keep the load factor at or below 0.5 so probes stay short
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ hash >>> 16;
+    }
+}
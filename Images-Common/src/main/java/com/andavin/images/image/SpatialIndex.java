@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A per-world spatial index of {@link CustomImageSection sections}
+ * that are bucketed by the chunk that they are located in.
+ * <p>
+ * This allows images to be refreshed for a player by only
+ * looking at the sections that are within range of them rather
+ * than every section of every image that is loaded.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class SpatialIndex {
+
+    private final Map<UUID, Map<Long, CustomImageSection[]>> worlds = new ConcurrentHashMap<>();
+
+    /**
+     * Add all of the sections of the given {@link CustomImage}
+     * to this index.
+     *
+     * @param image The image to add.
+     */
+    public void add(CustomImage image) {
+
+        for (CustomImageSection section : image.getSections()) {
+            Location location = section.getLocation();
+            this.worlds.computeIfAbsent(location.getWorld().getUID(), __ -> new ConcurrentHashMap<>())
+                    .merge(key(location), new CustomImageSection[] { section }, SpatialIndex::concat);
+        }
+    }
+
+    /**
+     * Remove all of the sections of the given {@link CustomImage}
+     * from this index.
+     *
+     * @param image The image to remove.
+     */
+    public void remove(CustomImage image) {
+
+        for (CustomImageSection section : image.getSections()) {
+
+            Location location = section.getLocation();
+            Map<Long, CustomImageSection[]> chunks = this.worlds.get(location.getWorld().getUID());
+            if (chunks != null) {
+                chunks.computeIfPresent(key(location), (__, sections) -> remove(sections, section));
+            }
+        }
+    }
+
+    /**
+     * Refresh the {@link Viewer} of the given player for its current
+     * location. Only the sections that are already visible to it and
+     * those that are near enough to the location to be shown are
+     * looked at to determine what to show and hide.
+     * <p>
+     * Nothing is done if the player does not have a viewer,
+     * such as when they have left since being marked.
+     *
+     * @param player The player to refresh the sections for.
+     * @param location The current location of the player.
+     */
+    public void refresh(Player player, Location location) {
+
+        Viewer viewer = Viewer.getIfPresent(player);
+        if (viewer == null) {
+            return;
+        }
+
+        Set<CustomImageSection> sections = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (location != null) {
+            this.collect(location, viewer.updateDistances(), sections);
+        }
+
+        viewer.update(location, sections);
+    }
+
+    /**
+     * Count the sections that are within the given distance of
+     * a location. This is a measure of how much would need to be
+     * sent to a player that is standing at that location.
+     *
+     * @param location The location to count the sections near.
+     * @param distance The distance in blocks to count within.
+     * @return The amount of sections that are within the distance.
+     */
+    public int count(Location location, int distance) {
+
+        Set<CustomImageSection> sections = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.collect(location, distance, sections);
+        int count = 0;
+        for (CustomImageSection section : sections) {
+
+            if (section.isWithin(location, distance)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the online players that are close enough to any section
+     * of the given images for it to be shown to them.
+     * <p>
+     * This reads the location of each player and so it must
+     * be called on the main thread.
+     *
+     * @param images The images to find the players near.
+     * @param distance The distance in blocks to look within.
+     * @return The players that are near any of the images.
+     */
+    public Set<Player> getPlayersNear(Collection<CustomImage> images, int distance) {
+
+        Map<World, Set<Long>> worlds = new HashMap<>();
+        for (CustomImage image : images) {
+
+            for (CustomImageSection section : image.getSections()) {
+                Location location = section.getLocation();
+                worlds.computeIfAbsent(location.getWorld(), __ -> new HashSet<>()).add(key(location));
+            }
+        }
+
+        Set<Player> players = new HashSet<>();
+        // Sections are measured from their block corner so
+        // there needs to be one extra chunk of leeway
+        int radius = (distance >> 4) + 1;
+        worlds.forEach((world, keys) -> {
+
+            for (Player player : world.getPlayers()) {
+
+                Location location = player.getLocation();
+                int centerX = location.getBlockX() >> 4, centerZ = location.getBlockZ() >> 4;
+                for (long key : keys) {
+
+                    int x = (int) (key >> 32), z = (int) key;
+                    if (Math.abs(x - centerX) <= radius && Math.abs(z - centerZ) <= radius) {
+                        players.add(player);
+                        break;
+                    }
+                }
+            }
+        });
+
+        return players;
+    }
+
+    /**
+     * Get the sections that are located within the given chunk.
+     *
+     * @param world The UUID of the world that the chunk is in.
+     * @param x The X coordinate of the chunk.
+     * @param z The Z coordinate of the chunk.
+     * @return The sections within the chunk or {@code null} if there are none.
+     */
+    CustomImageSection[] get(UUID world, int x, int z) {
+        Map<Long, CustomImageSection[]> chunks = this.worlds.get(world);
+        return chunks != null ? chunks.get(key(x, z)) : null;
+    }
+
+    private void collect(Location location, int distance, Set<CustomImageSection> sections) {
+
+        Map<Long, CustomImageSection[]> chunks = this.worlds.get(location.getWorld().getUID());
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        // Sections are measured from their block corner so
+        // there needs to be one extra chunk of leeway
+        int radius = (distance >> 4) + 1;
+        int centerX = location.getBlockX() >> 4, centerZ = location.getBlockZ() >> 4;
+        int width = radius * 2 + 1;
+        if (chunks.size() < width * width) {
+            // There are fewer populated chunks than there are chunks
+            // within range so check each of those instead
+            chunks.forEach((key, chunkSections) -> {
+
+                int x = (int) (key >> 32), z = (int) (long) key;
+                if (Math.abs(x - centerX) <= radius && Math.abs(z - centerZ) <= radius) {
+                    Collections.addAll(sections, chunkSections);
+                }
+            });
+
+            return;
+        }
+
+        for (int x = centerX - radius; x <= centerX + radius; x++) {
+
+            for (int z = centerZ - radius; z <= centerZ + radius; z++) {
+
+                CustomImageSection[] chunkSections = chunks.get(key(x, z));
+                if (chunkSections != null) {
+                    Collections.addAll(sections, chunkSections);
+                }
+            }
+        }
+    }
+
+    private static long key(Location location) {
+        return key(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    static long key(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    private static CustomImageSection[] concat(CustomImageSection[] first, CustomImageSection[] second) {
+        CustomImageSection[] sections = new CustomImageSection[first.length + second.length];
+        System.arraycopy(first, 0, sections, 0, first.length);
+        System.arraycopy(second, 0, sections, first.length, second.length);
+        return sections;
+    }
+
+    private static CustomImageSection[] remove(CustomImageSection[] sections, CustomImageSection section) {
+
+        for (int i = 0; i < sections.length; i++) {
+
+            if (sections[i] == section) {
+
+                if (sections.length == 1) {
+                    return null; // Remove the chunk altogether
+                }
+
+                CustomImageSection[] newSections = new CustomImageSection[sections.length - 1];
+                System.arraycopy(sections, 0, newSections, 0, i);
+                System.arraycopy(sections, i + 1, newSections, i, sections.length - i - 1);
+                return newSections;
+            }
+        }
+
+        return sections;
+    }
+}
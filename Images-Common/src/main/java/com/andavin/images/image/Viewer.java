@@ -0,0 +1,780 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import com.andavin.images.MapHelper;
+import com.andavin.reflect.Reflection;
+import com.andavin.reflect.exception.UncheckedNoSuchMethodException;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The visibility state of {@link CustomImageSection sections}
+ * for a single player.
+ * <p>
+ * Each viewer keeps the set of sections that are currently shown
+ * to its player so that leaving, respawning or changing worlds only
+ * needs to look at what that player can actually see rather than at
+ * every section of every image. Sections are tracked by their
+ * {@link SectionSlots slot} in a {@link BitSet} so that this costs
+ * a single bit per section.
+ * <p>
+ * The client keeps the pixels of every map it has been sent until
+ * it leaves the world, so each viewer also remembers which maps have
+ * been sent and a section that is shown again only spawns its frame.
+ * <p>
+ * Sections that come into range are not sent straight away. They are
+ * queued with the nearest sections and those in front of the player
+ * first and then {@link #sendQueued() sent} each tick within the
+ * {@link #bandwidth} of the player so that a large gallery does not
+ * flood the connection all at once.
+ * <p>
+ * The show and hide distances of each viewer are the configured
+ * {@link MapHelper#showDistance distances} reduced to what its client
+ * can actually render, so a player with a short view distance is not
+ * sent frames that they would never see. Sections that face away
+ * from a player are not shown until the player is in front of them,
+ * but those that are already shown are not hidden again so that an
+ * image does not flicker as the player walks along its edge.
+ * <p>
+ * Sections are also not shown until the chunk that they are in has
+ * been sent to the client. Where the server tells when that happens,
+ * the {@link ChunkTracker} keeps each viewer up to date with the
+ * chunks of its client, otherwise every chunk within the view
+ * distance of the player is assumed to have been sent.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class Viewer {
+
+    /**
+     * The most bytes of map data that should be sent to a
+     * single player each tick. If this is not positive, then
+     * every queued section is sent on the next tick.
+     */
+    public static int bandwidth = 131072;
+
+    /**
+     * If the view distance of the client should limit
+     * how far away sections are shown to it.
+     */
+    public static boolean clientViewDistance = true;
+
+    /**
+     * The most blocks away that a section may be shown from
+     * regardless of view distance (e.g. the entity tracking range
+     * of the server). If this is not positive, then there is no limit.
+     */
+    public static int trackingRange;
+
+    /**
+     * The blocks behind a section that a player may be and still
+     * have it shown to them. If this is negative, then sections
+     * are shown no matter which way they face.
+     */
+    public static double backFaceMargin = 1;
+
+    /**
+     * If sections should wait to be shown until the chunk
+     * that they are in has been sent to the client.
+     */
+    public static boolean waitForChunks = true;
+
+    /**
+     * If the chunks of each client are being tracked
+     * by the {@link ChunkTracker}.
+     */
+    static volatile boolean chunkEvents;
+
+    /**
+     * The approximate size of the packets that spawn a frame.
+     */
+    private static final int FRAME_BYTES = 64;
+
+    /**
+     * The approximate size of the packet holding the pixels of a map.
+     */
+    private static final int MAP_BYTES = 128 * 128 + 16;
+    private static final Method CLIENT_VIEW_DISTANCE;
+    private static final Map<UUID, Viewer> VIEWERS = new ConcurrentHashMap<>();
+
+    private final Player player;
+    private final BitSet visible = new BitSet(), queued = new BitSet();
+    private final PriorityQueue<Queued> queue = new PriorityQueue<>();
+    private final Set<Integer> maps = new HashSet<>();
+    private final Set<Long> chunks = new HashSet<>();
+    private UUID mapWorld, chunkWorld;
+    private int showDistance = MapHelper.showDistance, hideDistance = MapHelper.hideDistance;
+    private int viewChunks = Bukkit.getViewDistance();
+    private volatile int queuedCount;
+    private volatile boolean blocked;
+
+    static {
+
+        Method method = null;
+        try { // Added by Paper and later by Spigot
+            method = Reflection.findMethod(Player.class, "getClientViewDistance");
+        } catch (UncheckedNoSuchMethodException ignored) {
+        }
+
+        CLIENT_VIEW_DISTANCE = method;
+    }
+
+    private Viewer(Player player) {
+        this.player = player;
+    }
+
+    /**
+     * Get the viewer for the given player creating
+     * it if it does not exist yet.
+     * <p>
+     * A viewer is only kept for a player that is currently online.
+     * If the player has left (or rejoined as a new player object),
+     * then a viewer that is not kept is returned instead so that
+     * nothing is ever tracked for a connection that is closed.
+     *
+     * @param player The player to get the viewer for.
+     * @return The viewer for the player.
+     */
+    public static Viewer get(Player player) {
+
+        UUID uuid = player.getUniqueId();
+        Viewer viewer = VIEWERS.get(uuid);
+        if (viewer != null && viewer.player == player) {
+            return viewer;
+        }
+
+        if (Bukkit.getPlayer(uuid) != player) {
+            return new Viewer(player);
+        }
+        // Replace any viewer left over from a previous login
+        return VIEWERS.compute(uuid, (__, current) ->
+                current != null && current.player == player ? current : new Viewer(player));
+    }
+
+    /**
+     * Get the viewer for the given player only if it
+     * already exists and is for that same player object.
+     *
+     * @param player The player to get the viewer for.
+     * @return The viewer or {@code null} if there is none.
+     */
+    public static Viewer getIfPresent(Player player) {
+        Viewer viewer = VIEWERS.get(player.getUniqueId());
+        return viewer != null && viewer.player == player ? viewer : null;
+    }
+
+    /**
+     * Forget the viewer of the given player without sending
+     * them anything. This should be called once the player
+     * is no longer online.
+     *
+     * @param player The player to remove.
+     */
+    public static void remove(Player player) {
+        VIEWERS.computeIfPresent(player.getUniqueId(), (__, viewer) -> viewer.player == player ? null : viewer);
+    }
+
+    /**
+     * Get the total amount of sections that are waiting
+     * to be sent to all viewers.
+     *
+     * @return The amount of queued sections.
+     */
+    public static int getTotalQueued() {
+
+        int total = 0;
+        for (Viewer viewer : VIEWERS.values()) {
+            total += viewer.getQueuedCount();
+        }
+
+        return total;
+    }
+
+    /**
+     * Send the queued sections of every viewer up to the
+     * {@link #bandwidth} allowed for each of them. This
+     * should be called once every tick.
+     */
+    public static void sendQueued() {
+
+        int budget = LoadController.scaleBandwidth(bandwidth);
+        for (Viewer viewer : VIEWERS.values()) {
+            viewer.send(budget);
+        }
+    }
+
+    /**
+     * Get all of the viewers that are currently tracked.
+     *
+     * @return The viewers.
+     */
+    static Collection<Viewer> getViewers() {
+        return VIEWERS.values();
+    }
+
+    /**
+     * Get the player that this viewer is for.
+     *
+     * @return The player.
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Get the amount of sections that are currently
+     * shown to this viewer.
+     *
+     * @return The amount of visible sections.
+     */
+    public synchronized int getVisibleCount() {
+        return this.visible.cardinality();
+    }
+
+    /**
+     * Get the amount of sections that are in range of this
+     * viewer, but are still waiting to be sent to them as of
+     * the last time that its queue was sent or reordered.
+     * <p>
+     * This never waits for the lock of this viewer, so it is
+     * safe to call from the main thread while sections are
+     * being sent to the viewer on another thread.
+     *
+     * @return The amount of queued sections.
+     */
+    public int getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Tell if the connection of this viewer was not accepting
+     * any more data the last time that sections were sent to it.
+     *
+     * @return If this viewer is blocked.
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * Get the distance within which sections are shown to
+     * this viewer as of its last refresh.
+     *
+     * @return The show distance of this viewer.
+     */
+    public synchronized int getShowDistance() {
+        return showDistance;
+    }
+
+    /**
+     * Get the distance beyond which sections are hidden from
+     * this viewer as of its last refresh.
+     *
+     * @return The hide distance of this viewer.
+     */
+    public synchronized int getHideDistance() {
+        return hideDistance;
+    }
+
+    /**
+     * Work out the show and hide distances of this viewer again
+     * from the configured distances and its current view distance.
+     *
+     * @return The new show distance.
+     */
+    synchronized int updateDistances() {
+
+        int chunks = Bukkit.getViewDistance();
+        if (CLIENT_VIEW_DISTANCE != null) {
+            int client = Reflection.<Integer>invokeMethod(CLIENT_VIEW_DISTANCE, this.player);
+            if (client > 0) {
+                chunks = Math.min(chunks, client);
+            }
+        }
+
+        this.viewChunks = chunks;
+        int limit = Integer.MAX_VALUE;
+        if (clientViewDistance) {
+            // Sections are only rendered within chunks that the client has loaded
+            limit = (chunks + 1) << 4;
+        }
+
+        if (trackingRange > 0) {
+            limit = Math.min(limit, trackingRange);
+        }
+        // Keep the same gap between showing and hiding to avoid
+        // sections flickering at the edge of the show distance
+        this.showDistance = Math.min(LoadController.scaleDistance(MapHelper.showDistance), limit);
+        this.hideDistance = this.showDistance + Math.max(0, MapHelper.hideDistance - MapHelper.showDistance);
+        return this.showDistance;
+    }
+
+    /**
+     * Work out the distances of this viewer again and forget any
+     * queued sections that are no longer within the new show distance.
+     * This should be called when the {@link LoadController} changes
+     * the distance level so that queues shrink along with the distance
+     * rather than only once sections pass the hide distance.
+     *
+     * @param location The location of the player taken on the main thread.
+     */
+    synchronized void applyDistances(Location location) {
+
+        this.updateDistances();
+        if (this.queued.isEmpty()) {
+            return;
+        }
+
+        boolean changed = false;
+        for (int slot = this.queued.nextSetBit(0); slot >= 0; slot = this.queued.nextSetBit(slot + 1)) {
+
+            CustomImageSection section = SectionSlots.get(slot);
+            if (section == null || !section.isWithin(location, this.showDistance)) {
+                this.queued.clear(slot);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            this.prioritize(location);
+        }
+    }
+
+    /**
+     * Update this viewer for a new location. Any visible section
+     * that is now beyond the {@link #getHideDistance() hide distance}
+     * is hidden and any of the given nearby sections that are within
+     * the {@link #getShowDistance() show distance} are queued to
+     * be shown.
+     *
+     * @param location The location of the player or {@code null}
+     *                 to hide everything.
+     * @param nearby The sections that are near the location.
+     */
+    synchronized void update(Location location, Collection<CustomImageSection> nearby) {
+
+        List<CustomImageSection> removed = new ArrayList<>();
+        for (int slot = this.visible.nextSetBit(0); slot >= 0; slot = this.visible.nextSetBit(slot + 1)) {
+
+            CustomImageSection section = SectionSlots.get(slot);
+            if (section == null || !section.isWithin(location, this.hideDistance)) {
+
+                this.visible.clear(slot);
+                if (section != null) {
+                    removed.add(section);
+                }
+            }
+        }
+        // Sections that were never sent can simply be forgotten
+        for (int slot = this.queued.nextSetBit(0); slot >= 0; slot = this.queued.nextSetBit(slot + 1)) {
+
+            CustomImageSection section = SectionSlots.get(slot);
+            if (section == null || !section.isWithin(location, this.hideDistance) ||
+                    !isFacing(section, location) || !this.hasChunk(section, location)) {
+                this.queued.clear(slot);
+            }
+        }
+
+        for (CustomImageSection section : nearby) {
+
+            if (section.isWithin(location, this.showDistance) && isFacing(section, location) &&
+                    this.hasChunk(section, location) && !contains(this.visible, section)) {
+                add(this.queued, section);
+            }
+        }
+
+        this.destroy(removed);
+        this.prioritize(location);
+    }
+
+    /**
+     * Show or hide each of the given sections depending on
+     * whether they are within the show distance or beyond the
+     * hide distance of the given location respectively.
+     *
+     * @param location The location of the player.
+     * @param sections The sections to refresh.
+     */
+    synchronized void refresh(Location location, Collection<CustomImageSection> sections) {
+
+        this.updateDistances();
+        boolean changed = false;
+        List<CustomImageSection> removed = new ArrayList<>();
+        for (CustomImageSection section : sections) {
+
+            if (section.isWithin(location, this.showDistance)) {
+
+                if (!isFacing(section, location) || !this.hasChunk(section, location)) {
+                    changed |= remove(this.queued, section);
+                } else if (!contains(this.visible, section) && add(this.queued, section)) {
+                    changed = true;
+                }
+            } else if (!section.isWithin(location, this.hideDistance)) {
+
+                if (remove(this.visible, section)) {
+                    removed.add(section);
+                } else if (remove(this.queued, section)) {
+                    changed = true;
+                }
+            }
+        }
+
+        this.destroy(removed);
+        if (changed) {
+            this.prioritize(location);
+        }
+    }
+
+    /**
+     * Show the given section to this viewer straight away
+     * if it is not already shown.
+     *
+     * @param section The section to show.
+     */
+    synchronized void show(CustomImageSection section) {
+
+        remove(this.queued, section);
+        if (add(this.visible, section)) {
+
+            List<Object> packets = new ArrayList<>(3);
+            try {
+                section.addPackets(this.player, packets, this.receive(section));
+            } catch (RuntimeException e) {
+                MapHelper.discardPackets(packets);
+                throw e;
+            }
+
+            this.sendPackets(packets);
+        }
+    }
+
+    /**
+     * Hide the given section from this viewer if it
+     * is currently shown or stop it from being shown
+     * if it is queued.
+     *
+     * @param section The section to hide.
+     */
+    synchronized void hide(CustomImageSection section) {
+
+        remove(this.queued, section);
+        if (remove(this.visible, section)) {
+            MapHelper.destroyMaps(this.player, section.getFrameId());
+        }
+    }
+
+    /**
+     * Hide all of the given sections that are currently
+     * shown or queued to be shown to this viewer.
+     *
+     * @param sections The sections to hide.
+     * @param send If the player should be sent the removal
+     *             or the sections should only be forgotten.
+     * @return If any of the sections were shown or queued for this viewer.
+     */
+    synchronized boolean hide(Collection<CustomImageSection> sections, boolean send) {
+
+        int count = 0;
+        boolean found = false;
+        int[] frameIds = new int[sections.size()];
+        for (CustomImageSection section : sections) {
+
+            if (remove(this.visible, section)) {
+                frameIds[count++] = section.getFrameId();
+            } else if (remove(this.queued, section)) {
+                found = true;
+            }
+        }
+
+        if (count != 0 && send) {
+            MapHelper.destroyMaps(this.player, Arrays.copyOf(frameIds, count));
+        }
+
+        return count != 0 || found;
+    }
+
+    /**
+     * Hide every section that is currently shown to this
+     * viewer and forget any that are queued.
+     */
+    public synchronized void hideAll() {
+        this.queued.clear();
+        this.queue.clear();
+        this.queuedCount = 0;
+        List<CustomImageSection> sections = new ArrayList<>(this.visible.cardinality());
+        for (int slot = this.visible.nextSetBit(0); slot >= 0; slot = this.visible.nextSetBit(slot + 1)) {
+
+            CustomImageSection section = SectionSlots.get(slot);
+            if (section != null) {
+                sections.add(section);
+            }
+        }
+
+        this.visible.clear();
+        this.destroy(sections);
+    }
+
+    /**
+     * Remember that the given chunk has been sent to the client
+     * of this viewer so that the sections within it may be shown.
+     *
+     * @param world The UUID of the world that the chunk is in.
+     * @param x The X coordinate of the chunk.
+     * @param z The Z coordinate of the chunk.
+     * @return If the chunk was not already known to be sent.
+     */
+    synchronized boolean loadChunk(UUID world, int x, int z) {
+
+        if (!world.equals(this.chunkWorld)) {
+            this.chunks.clear();
+            this.chunkWorld = world;
+        }
+
+        return this.chunks.add(SpatialIndex.key(x, z));
+    }
+
+    /**
+     * Forget that the given chunk has been sent to the client of
+     * this viewer along with any of its sections that were shown.
+     *
+     * @param x The X coordinate of the chunk.
+     * @param z The Z coordinate of the chunk.
+     * @param sections The sections within the chunk or {@code null}
+     *                 if there are none.
+     */
+    synchronized void unloadChunk(int x, int z, Collection<CustomImageSection> sections) {
+
+        this.chunks.remove(SpatialIndex.key(x, z));
+        if (sections != null) {
+            this.hide(sections, false);
+        }
+    }
+
+    /**
+     * Forget which maps have been sent to this viewer so that
+     * the pixels are sent again the next time they are shown.
+     * This should be called whenever the client may have discarded
+     * its maps (e.g. when respawning or changing worlds, even if the
+     * new world has no images in it).
+     */
+    public synchronized void resetMaps() {
+        this.maps.clear();
+    }
+
+    private synchronized void send(int budget) {
+
+        if (this.queued.isEmpty()) {
+            this.queue.clear();
+            this.queuedCount = 0;
+            return;
+        }
+        // Wait for the client to catch up rather than
+        // piling more data onto the connection
+        this.blocked = !MapHelper.canSend(this.player);
+        if (this.blocked) {
+            return;
+        }
+
+        int spent = 0;
+        List<Object> packets = new ArrayList<>();
+        try {
+            // Always send at least one section so that a budget
+            // smaller than a single map does not stop everything
+            while (!this.queue.isEmpty() && (budget <= 0 || spent < budget)) {
+
+                CustomImageSection section = this.queue.poll().section;
+                if (remove(this.queued, section) && add(this.visible, section)) {
+                    boolean pixels = this.receive(section);
+                    section.addPackets(this.player, packets, pixels);
+                    spent += pixels ? FRAME_BYTES + MAP_BYTES : FRAME_BYTES;
+                }
+            }
+        } catch (RuntimeException e) {
+            MapHelper.discardPackets(packets);
+            throw e;
+        }
+
+        this.queuedCount = this.queued.cardinality();
+        this.sendPackets(packets);
+    }
+
+    private void sendPackets(List<Object> packets) {
+
+        // The player may have left while the packets were
+        // created, so release them rather than writing them
+        // to a connection that is closing
+        if (VIEWERS.get(this.player.getUniqueId()) != this) {
+            MapHelper.discardPackets(packets);
+            return;
+        }
+
+        MapHelper.sendPackets(this.player, packets);
+    }
+
+    private void prioritize(Location location) {
+
+        this.queue.clear();
+        if (this.queued.isEmpty()) {
+            this.queuedCount = 0;
+            return;
+        }
+
+        Vector direction = location.getDirection();
+        for (int slot = this.queued.nextSetBit(0); slot >= 0; slot = this.queued.nextSetBit(slot + 1)) {
+
+            CustomImageSection section = SectionSlots.get(slot);
+            if (section != null) {
+                this.queue.add(new Queued(section, location, direction));
+            } else {
+                this.queued.clear(slot);
+            }
+        }
+
+        this.queuedCount = this.queued.cardinality();
+    }
+
+    private void destroy(List<CustomImageSection> removed) {
+
+        if (!removed.isEmpty()) {
+            // Remove every frame that has gone out of range together
+            int[] frameIds = new int[removed.size()];
+            for (int i = 0; i < frameIds.length; i++) {
+                frameIds[i] = removed.get(i).getFrameId();
+            }
+
+            MapHelper.destroyMaps(this.player, frameIds);
+        }
+    }
+
+    private static boolean isFacing(CustomImageSection section, Location location) {
+        return backFaceMargin < 0 || section.isFacing(location, backFaceMargin);
+    }
+
+    private boolean hasChunk(CustomImageSection section, Location location) {
+
+        if (!waitForChunks) {
+            return true;
+        }
+
+        Location sectionLocation = section.getLocation();
+        int x = sectionLocation.getBlockX() >> 4, z = sectionLocation.getBlockZ() >> 4;
+        // Viewers that were online before chunks were being tracked
+        // will not have been told about the chunks they already have
+        if (chunkEvents && this.chunkWorld != null) {
+            return sectionLocation.getWorld().getUID().equals(this.chunkWorld) &&
+                    this.chunks.contains(SpatialIndex.key(x, z));
+        }
+        // Otherwise assume every chunk within view distance has been sent
+        return Math.max(Math.abs(x - (location.getBlockX() >> 4)),
+                Math.abs(z - (location.getBlockZ() >> 4))) <= this.viewChunks;
+    }
+
+    private static boolean contains(BitSet sections, CustomImageSection section) {
+        int slot = section.getSlot();
+        return slot >= 0 && sections.get(slot);
+    }
+
+    private static boolean add(BitSet sections, CustomImageSection section) {
+
+        // Checked under the lock of this viewer so that a section
+        // can never be added back once it has been hidden to be destroyed
+        int slot = section.getSlot();
+        if (slot < 0 || section.isReleased() || sections.get(slot)) {
+            return false; // Released sections can no longer be shown
+        }
+
+        sections.set(slot);
+        return true;
+    }
+
+    private static boolean remove(BitSet sections, CustomImageSection section) {
+
+        int slot = section.getSlot();
+        if (slot < 0 || !sections.get(slot)) {
+            return false;
+        }
+
+        sections.clear(slot);
+        return true;
+    }
+
+    private boolean receive(CustomImageSection section) {
+
+        // Map IDs are only unique within a world and the client
+        // discards all of its maps when it changes worlds
+        UUID world = section.getLocation().getWorld().getUID();
+        if (!world.equals(this.mapWorld)) {
+            this.maps.clear();
+            this.mapWorld = world;
+        }
+
+        return this.maps.add(section.getMapId());
+    }
+
+    /**
+     * A section waiting to be sent ordered by how close it is
+     * to the player in rings of one chunk and then by whether
+     * it is in front of the player.
+     */
+    private static final class Queued implements Comparable<Queued> {
+
+        private final CustomImageSection section;
+        private final int ring;
+        private final boolean behind;
+        private final double distance;
+
+        Queued(CustomImageSection section, Location location, Vector direction) {
+            this.section = section;
+            Location sectionLocation = section.getLocation();
+            double x = sectionLocation.getX() - location.getX();
+            double y = sectionLocation.getY() - location.getY();
+            double z = sectionLocation.getZ() - location.getZ();
+            this.distance = x * x + y * y + z * z;
+            this.ring = (int) Math.sqrt(this.distance) >> 4;
+            this.behind = x * direction.getX() + y * direction.getY() + z * direction.getZ() < 0;
+        }
+
+        @Override
+        public int compareTo(Queued other) {
+
+            if (this.ring != other.ring) {
+                return Integer.compare(this.ring, other.ring);
+            }
+
+            if (this.behind != other.behind) {
+                return this.behind ? 1 : -1;
+            }
+
+            return Double.compare(this.distance, other.distance);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import com.andavin.images.MapHelper;
+import com.andavin.util.Logger;
+import com.andavin.util.Scheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A service that refreshes the images that are visible to
+ * players once per tick rather than once for every event
+ * that may have changed what they can see.
+ * <p>
+ * Players are {@link #markDirty(Player) marked} when they move,
+ * teleport, join or change worlds, and those that are {@link
+ * #markNear(Collection) near} images that have just been added. Each tick, the location of every
+ * dirty player is taken on the main thread and then each of them is
+ * refreshed exactly once on the {@link Scheduler#cpu(Runnable) CPU pool}.
+ * A player that is still being refreshed from a previous tick, or that
+ * did not fit into the pool, stays dirty until the next tick so that
+ * no two refreshes of the same player ever run at once.
+ * <p>
+ * Players that have just {@link #admit(Player) joined} are held
+ * back from being refreshed at all until they are admitted. When
+ * many players join at once, such as after a restart, they are
+ * spread out over the {@link #joinWindow join window} with the
+ * players that have the least to be sent near them going first.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class VisibilityService {
+
+    /**
+     * The amount of ticks to wait after a player joins before
+     * their images are first shown to them.
+     */
+    private static final int JOIN_DELAY = 20;
+
+    /**
+     * The amount of ticks over which to spread out the first refresh
+     * of players that join at around the same time. If this is zero
+     * or less, every player is refreshed as soon as they are able.
+     */
+    public static int joinWindow = 100;
+
+    private final SpatialIndex index;
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> running = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Integer> joining = new ConcurrentHashMap<>();
+    private final PriorityQueue<Admission> admissions =
+            new PriorityQueue<>(Comparator.comparingInt(admission -> admission.weight));
+    // Only incremented on the main thread, but read by admit from any thread
+    private volatile int ticks;
+    private int storm;
+    private volatile BukkitTask task;
+
+    /**
+     * Create a new service to refresh the sections
+     * in the given index for players.
+     *
+     * @param index The index to refresh players from.
+     */
+    public VisibilityService(SpatialIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Start refreshing dirty players every tick.
+     *
+     * @throws IllegalStateException If the service is already running.
+     */
+    public void start() {
+
+        checkState(this.task == null, "already started");
+        this.task = Scheduler.repeat(this::tick, 1, 1);
+    }
+
+    /**
+     * Stop refreshing players. Any refreshes that are already
+     * running are left to finish on the CPU pool.
+     */
+    public void stop() {
+
+        if (this.task == null) {
+            return;
+        }
+
+        this.task.cancel();
+        this.task = null;
+        this.dirty.clear();
+        this.joining.clear();
+        this.admissions.clear();
+        this.storm = 0;
+    }
+
+    /**
+     * Admit a player that has just joined to be refreshed for the
+     * first time. Until it is their turn, the player will not be
+     * refreshed even if they are {@link #markDirty(Player) marked}.
+     * This is safe to call from any thread.
+     *
+     * @param player The player that joined.
+     */
+    public void admit(Player player) {
+        this.joining.put(player.getUniqueId(), this.ticks + JOIN_DELAY);
+    }
+
+    /**
+     * Mark the given player to be refreshed on the next tick.
+     * Marking a player more than once before then has no effect.
+     * This is safe to call from any thread.
+     *
+     * @param player The player to mark.
+     */
+    public void markDirty(Player player) {
+
+        UUID uuid = player.getUniqueId();
+        if (!this.joining.containsKey(uuid)) {
+            this.dirty.add(uuid);
+        }
+    }
+
+    /**
+     * Mark every online player that is near enough to any of the
+     * given images to have it shown to them. This should be called
+     * once images have been added so that players who are standing
+     * still are shown them without needing to move first.
+     * This is safe to call from any thread.
+     *
+     * @param images The images that have been added.
+     */
+    public void markNear(Collection<CustomImage> images) {
+
+        if (images.isEmpty() || this.task == null) {
+            return;
+        }
+        // Players can only be located from the main thread
+        if (!Bukkit.isPrimaryThread()) {
+            List<CustomImage> added = new ArrayList<>(images);
+            Scheduler.sync(() -> this.markNear(added));
+            return;
+        }
+
+        this.index.getPlayersNear(images, MapHelper.showDistance).forEach(this::markDirty);
+    }
+
+    /**
+     * Get the amount of players that are waiting to be refreshed.
+     *
+     * @return The amount of dirty players.
+     */
+    public int getDirtyCount() {
+        return this.dirty.size();
+    }
+
+    /**
+     * Get the amount of players that have joined and are
+     * waiting to be refreshed for the first time.
+     *
+     * @return The amount of players waiting to be admitted.
+     */
+    public int getJoiningCount() {
+        return this.joining.size();
+    }
+
+    private void tick() {
+
+        this.ticks++;
+        this.admit();
+        for (Iterator<UUID> itr = this.dirty.iterator(); itr.hasNext(); ) {
+
+            UUID uuid = itr.next();
+            if (this.running.contains(uuid)) {
+                continue; // Still refreshing so wait until the next tick
+            }
+
+            itr.remove();
+            Player player = Bukkit.getPlayer(uuid);
+            if (player == null) {
+                continue;
+            }
+            // Take the location here so the worker does not
+            // touch the player's position off of the main thread
+            Location location = player.getLocation();
+            this.running.add(uuid);
+            boolean queued = Scheduler.cpu(() -> {
+
+                try {
+                    this.index.refresh(player, location);
+                } catch (RuntimeException e) {
+                    Logger.severe(e);
+                } finally {
+                    this.running.remove(uuid);
+                }
+            });
+
+            if (!queued) {
+                // The pool is full so leave everyone
+                // else to be tried again on the next tick
+                this.running.remove(uuid);
+                this.dirty.add(uuid);
+                break;
+            }
+        }
+    }
+
+    private void admit() {
+
+        for (Iterator<Map.Entry<UUID, Integer>> itr = this.joining.entrySet().iterator(); itr.hasNext(); ) {
+
+            Map.Entry<UUID, Integer> entry = itr.next();
+            if (entry.getValue() < 0 || entry.getValue() > this.ticks) {
+                continue; // Already waiting for admission or not yet ready
+            }
+
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player == null) {
+                itr.remove();
+                continue;
+            }
+
+            entry.setValue(-1);
+            this.storm++;
+            this.admissions.add(new Admission(player,
+                    this.index.count(player.getLocation(), MapHelper.showDistance)));
+        }
+
+        if (this.admissions.isEmpty()) {
+            this.storm = 0;
+            return;
+        }
+        // Admit enough players each tick that everyone who joined
+        // together is refreshed by the end of the window
+        int admit = joinWindow > 0 ? (this.storm + joinWindow - 1) / joinWindow : this.admissions.size();
+        for (int i = 0; i < admit && !this.admissions.isEmpty(); i++) {
+            // The player's location is taken when they are refreshed
+            // so it does not matter if they have moved since joining
+            Player player = this.admissions.poll().player;
+            this.joining.remove(player.getUniqueId(), -1);
+            if (player.isOnline()) {
+                this.dirty.add(player.getUniqueId());
+            }
+        }
+    }
+
+    private static final class Admission {
+
+        private final Player player;
+        private final int weight;
+
+        Admission(Player player, int weight) {
+            this.player = player;
+            this.weight = weight;
+        }
+    }
+}
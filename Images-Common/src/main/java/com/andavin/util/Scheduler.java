@@ -40,6 +40,13 @@ import java.util.function.Supplier;
  * cumbersome and easier to use. Also, allows for easy
  * {@code do-while} loops and similar condition based looping
  * in timed loop tasks.
+ * <p>
+ * Work that does not need to be on the main thread should
+ * be given to one of the bounded pools rather than to Bukkit:
+ * the {@link #cpu(Runnable) CPU pool} for computation, such as
+ * converting images and refreshing what players can see, and the
+ * {@link #io(Runnable) I/O pool} for anything that blocks, such as
+ * the database and downloads.
  *
  * @author Andavin
  * @since February 9, 2018
@@ -48,6 +55,93 @@ import java.util.function.Supplier;
 public final class Scheduler {
 
     private static Plugin instance;
+    private static volatile TaskPool cpu, io;
+
+    /**
+     * Start the CPU and I/O pools. Until this is called, tasks
+     * given to either pool are run by Bukkit instead.
+     *
+     * @param cpuThreads The amount of threads in the CPU pool.
+     * @param cpuQueue The most tasks that may wait in the CPU pool.
+     * @param ioThreads The amount of threads in the I/O pool.
+     * @param ioQueue The most tasks that may wait in the I/O pool.
+     * @param ioVirtual The most tasks that may run at once if the I/O
+     *                  pool should use virtual threads where they are
+     *                  supported or zero to always use {@code ioThreads}.
+     */
+    public static void startPools(int cpuThreads, int cpuQueue, int ioThreads, int ioQueue, int ioVirtual) {
+
+        cpu = new TaskPool(instance, "CPU", cpuThreads, cpuQueue, TaskPool.Rejection.DISCARD);
+        if (ioVirtual > 0 && TaskPool.supportsVirtualThreads()) {
+            io = TaskPool.ofVirtual(instance, "I/O", ioVirtual, ioQueue, TaskPool.Rejection.OVERFLOW);
+            Logger.info("Running I/O on virtual threads (up to {} at once)", ioVirtual);
+        } else {
+            io = new TaskPool(instance, "I/O", ioThreads, ioQueue, TaskPool.Rejection.OVERFLOW);
+        }
+    }
+
+    /**
+     * Stop the CPU and I/O pools waiting a short time for
+     * the tasks that are already queued to finish.
+     */
+    public static void stopPools() {
+
+        TaskPool cpu = Scheduler.cpu;
+        Scheduler.cpu = null;
+        if (cpu != null) {
+            cpu.shutdown(5, TimeUnit.SECONDS);
+        }
+        // Let computation finish first since it may still queue I/O,
+        // so the I/O pool keeps accepting tasks until it has
+        TaskPool io = Scheduler.io;
+        Scheduler.io = null;
+        if (io != null) {
+            io.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Get the pool that computation is run on.
+     *
+     * @return The CPU pool or {@code null} if it is not running.
+     */
+    public static TaskPool getCpuPool() {
+        return cpu;
+    }
+
+    /**
+     * Get the pool that blocking operations are run on.
+     *
+     * @return The I/O pool or {@code null} if it is not running.
+     */
+    public static TaskPool getIoPool() {
+        return io;
+    }
+
+    /**
+     * Run a task that only uses the CPU on the CPU pool.
+     * If the pool is full, then the task is discarded, so it
+     * should be something that can be retried or skipped.
+     *
+     * @param run The {@link Runnable} to execute.
+     * @return If the task will be run or {@code false} if the
+     *         pool was full and it was discarded.
+     */
+    public static boolean cpu(Runnable run) {
+        return execute(cpu, run);
+    }
+
+    /**
+     * Run a task that may block, such as database access or
+     * downloads, on the I/O pool. If the pool is full, then the
+     * task is run by Bukkit instead so that it is never lost.
+     *
+     * @param run The {@link Runnable} to execute.
+     * @return If the task will be run.
+     */
+    public static boolean io(Runnable run) {
+        return execute(io, run);
+    }
 
     /**
      * Run a task synchronously on the main thread using
@@ -315,6 +409,16 @@ public final class Scheduler {
         return bukkitTask;
     }
 
+    private static boolean execute(TaskPool pool, Runnable run) {
+
+        if (pool != null) {
+            return pool.execute(run);
+        }
+
+        async(run);
+        return true;
+    }
+
     private static class Task implements Runnable {
 
         BukkitTask task;
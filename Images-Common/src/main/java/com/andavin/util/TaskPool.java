@@ -0,0 +1,339 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.util;
+
+import com.andavin.reflect.Reflection;
+import com.andavin.reflect.exception.UncheckedNoSuchMethodException;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A named pool of threads with a bounded queue of tasks
+ * that are waiting to be run.
+ * <p>
+ * Unlike the shared asynchronous scheduler of Bukkit, the amount
+ * of work that can be waiting in a pool is limited and it is always
+ * possible to tell how far behind the pool is. When the queue is full,
+ * the {@link Rejection} of the pool decides what happens to any more
+ * tasks that are given to it.
+ * <p>
+ * On Java 21 or newer, a pool may instead be made to run each task
+ * on its own {@link #ofVirtual virtual thread}. This suits tasks that
+ * spend most of their time blocked, such as database queries and
+ * downloads, since a blocked virtual thread does not tie up a platform
+ * thread. The amount of tasks that may run at once is still limited
+ * and tasks beyond that wait in the same way that they would in the
+ * queue of a platform pool.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class TaskPool {
+
+    private static final long WARNING_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final Method NEW_VIRTUAL_EXECUTOR;
+
+    private final String name;
+    private final Plugin plugin;
+    private final Rejection rejection;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int capacity;
+    private final AtomicInteger pending = new AtomicInteger(), waiting = new AtomicInteger(), active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong(), rejected = new AtomicLong();
+    private volatile long lastWarning;
+
+    static {
+
+        Method method = null;
+        try { // Added in Java 21
+            method = Reflection.findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+        } catch (UncheckedNoSuchMethodException ignored) {
+        }
+
+        NEW_VIRTUAL_EXECUTOR = method;
+    }
+
+    /**
+     * Create a new pool and start its threads.
+     *
+     * @param plugin The plugin to overflow tasks to Bukkit for.
+     * @param name The name of the pool used to name its threads.
+     * @param threads The amount of threads to run tasks on.
+     * @param queueSize The most tasks that may wait to be run.
+     * @param rejection What to do with tasks once the queue is full.
+     */
+    public TaskPool(Plugin plugin, String name, int threads, int queueSize, Rejection rejection) {
+        this(plugin, name, newPlatformExecutor(name, threads, queueSize), null, threads + queueSize, rejection);
+    }
+
+    private TaskPool(Plugin plugin, String name, ExecutorService executor,
+                     Semaphore permits, int capacity, Rejection rejection) {
+        this.name = name;
+        this.plugin = plugin;
+        this.executor = executor;
+        this.permits = permits;
+        this.capacity = capacity;
+        this.rejection = rejection;
+    }
+
+    /**
+     * Create a new pool that runs each task on a new virtual thread.
+     *
+     * @param plugin The plugin to overflow tasks to Bukkit for.
+     * @param name The name of the pool.
+     * @param concurrency The most tasks that may run at once.
+     * @param queueSize The most tasks that may wait to be run.
+     * @param rejection What to do with tasks once the queue is full.
+     * @return The new pool.
+     * @throws UnsupportedOperationException If the runtime does not
+     *                                       support virtual threads.
+     * @see #supportsVirtualThreads()
+     */
+    public static TaskPool ofVirtual(Plugin plugin, String name, int concurrency, int queueSize, Rejection rejection) {
+
+        if (NEW_VIRTUAL_EXECUTOR == null) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or newer");
+        }
+
+        checkArgument(concurrency > 0, "concurrency must be positive");
+        checkArgument(queueSize > 0, "queue size must be positive");
+        ExecutorService executor = Reflection.invokeMethod(NEW_VIRTUAL_EXECUTOR, null);
+        return new TaskPool(plugin, name, executor, new Semaphore(concurrency), concurrency + queueSize, rejection);
+    }
+
+    /**
+     * Tell if the runtime is able to run tasks on virtual threads.
+     *
+     * @return If {@link #ofVirtual virtual pools} can be created.
+     */
+    public static boolean supportsVirtualThreads() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Get the name of this pool.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Tell if this pool runs its tasks on virtual threads.
+     *
+     * @return If this pool is virtual.
+     */
+    public boolean isVirtual() {
+        return permits != null;
+    }
+
+    /**
+     * Run the given task on this pool. If the queue is full,
+     * then the task is handled by the {@link Rejection} of
+     * this pool instead.
+     *
+     * @param task The task to run.
+     * @return If the task will be run or {@code false} if
+     *         it was discarded.
+     */
+    public boolean execute(Runnable task) {
+
+        // Virtual threads are started straight away so the
+        // queue is bounded by counting the tasks in flight
+        if (this.pending.incrementAndGet() <= this.capacity) {
+
+            this.waiting.incrementAndGet();
+            try {
+                this.executor.execute(() -> this.run(task));
+                return true;
+            } catch (RejectedExecutionException e) {
+                this.waiting.decrementAndGet();
+            }
+        }
+
+        this.pending.decrementAndGet();
+        return this.reject(task);
+    }
+
+    private void run(Runnable task) {
+
+        try {
+
+            if (this.permits != null) {
+                try {
+                    this.permits.acquire();
+                } catch (InterruptedException e) {
+                    this.waiting.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                    return; // Shutting down
+                }
+            }
+
+            this.waiting.decrementAndGet();
+            this.active.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                Logger.severe(e);
+            } finally {
+
+                this.active.decrementAndGet();
+                this.completed.incrementAndGet();
+                if (this.permits != null) {
+                    this.permits.release();
+                }
+            }
+        } finally {
+            this.pending.decrementAndGet();
+        }
+    }
+
+    private boolean reject(Runnable task) {
+
+        long rejected = this.rejected.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (now - this.lastWarning >= WARNING_INTERVAL) {
+            this.lastWarning = now;
+            Logger.warn("The {} pool is full ({} tasks waiting, {} rejected so far)",
+                    this.name, this.waiting.get(), rejected);
+        }
+
+        if (this.rejection == Rejection.OVERFLOW && !this.executor.isShutdown() && this.plugin.isEnabled()) {
+            Bukkit.getScheduler().runTaskAsynchronously(this.plugin, task);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the amount of tasks that are waiting to be run.
+     *
+     * @return The depth of the queue.
+     */
+    public int getQueued() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Get the amount of tasks that are currently running.
+     *
+     * @return The amount of active tasks.
+     */
+    public int getActive() {
+        return this.active.get();
+    }
+
+    /**
+     * Get the amount of tasks that have finished running.
+     *
+     * @return The amount of completed tasks.
+     */
+    public long getCompleted() {
+        return this.completed.get();
+    }
+
+    /**
+     * Get the amount of tasks that did not fit into the queue
+     * and were either discarded or overflowed.
+     *
+     * @return The amount of rejected tasks.
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Stop accepting tasks and wait up to the given time for
+     * those that are already queued to finish running. Any
+     * tasks that are still waiting after that are dropped.
+     *
+     * @param timeout The most time to wait.
+     * @param unit The unit of the timeout.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+
+        this.executor.shutdown();
+        try {
+
+            if (!this.executor.awaitTermination(timeout, unit)) {
+                List<Runnable> dropped = this.executor.shutdownNow();
+                Logger.warn("The {} pool did not finish in time and dropped {} tasks", this.name, dropped.size());
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(String name, int threads, int queueSize) {
+        checkArgument(threads > 0, "threads must be positive");
+        checkArgument(queueSize > 0, "queue size must be positive");
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "Images " + name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> {
+            throw new RejectedExecutionException();
+        });
+    }
+
+    /**
+     * What a pool does with a task once its queue is full.
+     */
+    public enum Rejection {
+
+        /**
+         * The task is dropped and the caller is told so that
+         * it can try again later. This should only be used for
+         * tasks that can be safely retried or skipped.
+         */
+        DISCARD,
+
+        /**
+         * The task is handed to the shared asynchronous scheduler
+         * of Bukkit so that it is never lost and the thread that
+         * gave it (possibly the main thread) is never blocked.
+         */
+        OVERFLOW
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A hashed timing wheel that fires each scheduled key a
+ * given amount of ticks after it was last scheduled.
+ * <p>
+ * Scheduling a key that is already waiting moves it to its new
+ * deadline, so a key that is scheduled over and over only fires
+ * once it stops being scheduled. Each {@link #tick()} only looks
+ * at the keys that are due on that tick rather than every key that
+ * is waiting, and nothing is kept for a key once it has fired or
+ * has been {@link #cancel(Object) cancelled}.
+ * <p>
+ * This class is not thread-safe and is meant to be used from
+ * the main thread only.
+ *
+ * @param <K> The type of key to schedule.
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class TimingWheel<K> {
+
+    private final Set<K>[] buckets;
+    private final Map<K, Integer> scheduled = new HashMap<>();
+    private final Consumer<K> action;
+    private int current;
+
+    /**
+     * Create a new timing wheel that can schedule keys up
+     * to the given amount of ticks in the future.
+     *
+     * @param maxDelay The most ticks that a key can be delayed by.
+     * @param action The action to run for each key when it fires.
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int maxDelay, Consumer<K> action) {
+        checkArgument(maxDelay > 0, "max delay must be positive");
+        this.buckets = new Set[maxDelay + 1];
+        this.action = action;
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new HashSet<>();
+        }
+    }
+
+    /**
+     * Schedule the given key to fire after the given amount
+     * of ticks replacing any time it was already scheduled for.
+     *
+     * @param key The key to schedule.
+     * @param delay The amount of ticks to wait before firing.
+     * @throws IllegalArgumentException If the delay is not positive
+     *                                  or is more than the maximum delay.
+     */
+    public void schedule(K key, int delay) {
+
+        checkArgument(delay > 0 && delay < this.buckets.length, "delay out of range: %s", delay);
+        int bucket = (this.current + delay) % this.buckets.length;
+        Integer previous = this.scheduled.put(key, bucket);
+        if (previous != null && previous != bucket) {
+            this.buckets[previous].remove(key);
+        }
+
+        this.buckets[bucket].add(key);
+    }
+
+    /**
+     * Stop the given key from firing if it is scheduled.
+     *
+     * @param key The key to cancel.
+     */
+    public void cancel(K key) {
+
+        Integer bucket = this.scheduled.remove(key);
+        if (bucket != null) {
+            this.buckets[bucket].remove(key);
+        }
+    }
+
+    /**
+     * Get the amount of keys that are waiting to fire.
+     *
+     * @return The amount of scheduled keys.
+     */
+    public int size() {
+        return this.scheduled.size();
+    }
+
+    /**
+     * Advance this wheel by a single tick and fire every key
+     * that is due on that tick.
+     */
+    public void tick() {
+
+        this.current = (this.current + 1) % this.buckets.length;
+        Set<K> due = this.buckets[this.current];
+        if (due.isEmpty()) {
+            return;
+        }
+
+        this.buckets[this.current] = new HashSet<>();
+        for (K key : due) {
+            this.scheduled.remove(key);
+            this.action.accept(key);
+        }
+    }
+}
@@ -25,14 +25,22 @@ package com.andavin.images;
 
 import com.andavin.images.PacketListener.ImageListener;
 import com.andavin.images.command.CommandRegistry;
+import com.andavin.images.data.ConnectionPool;
 import com.andavin.images.data.DataManager;
 import com.andavin.images.data.FileDataManager;
 import com.andavin.images.data.MySQLDataManager;
 import com.andavin.images.data.SQLiteDataManager;
 import com.andavin.images.image.CustomImage;
+import com.andavin.images.image.ChunkTracker;
+import com.andavin.images.image.LoadController;
+import com.andavin.images.image.SectionRegistry;
+import com.andavin.images.image.SpatialIndex;
+import com.andavin.images.image.Viewer;
+import com.andavin.images.image.VisibilityService;
 import com.andavin.util.*;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.apache.commons.lang.StringUtils;
@@ -65,15 +73,7 @@ public class Images extends JavaPlugin implements Listener {
      *     need of an update. This could easily be improved in many
      *     ways and if there are any suggestions I'd be open to it.
      *
-     *  2. The database storage format is simply based on Java I/O Serializable.
-     *     There are inherent flaws to this such as no versioning
-     *     so it is extremely difficult to make any major changes to
-     *     the order of how the data is written.
-     *
-     *     A better way of storing this, but still preferably as a
-     *     byte array format would probably be a nice update.
-     *
-     *  3. Proxy/multi-server setups are not very well supported.
+     *  2. Proxy/multi-server setups are not very well supported.
      *     Each server needs to store it's only images. Therefore, if
      *     a shared MySQL server is used, for instance, then the images
      *     will most likely be duplicated across all servers where
@@ -84,13 +84,25 @@ public class Images extends JavaPlugin implements Listener {
      *     then somehow store images by server ID (a problem in itself).
      */
 
-    private static final CustomImage[] EMPTY_IMAGES_ARRAY = new CustomImage[0];
     private boolean protocolLib;
     private static Images instance;
     private static File imagesDirectory;
     private static DataManager dataManager;
-    private static final List<CustomImage> IMAGES = new ArrayList<>();
-    private static final Map<UUID, Long> LAST_MOVE_TIMES = new HashMap<>();
+    private static VisibilityService visibility;
+    // Readers only ever see a complete snapshot so the lock is
+    // held by writers alone to keep the index and registry in step
+    private static final List<CustomImage> IMAGES = new CopyOnWriteArrayList<>();
+    // Images that are being saved, but are not added yet. Guarded by IMAGES.
+    private static final Set<CustomImage> ADDING = new HashSet<>();
+    private static final SpatialIndex INDEX = new SpatialIndex();
+    private static final int SETTLE_TICKS = 50; // 2.5 seconds
+    private static final TimingWheel<UUID> SETTLE_TIMER = new TimingWheel<>(SETTLE_TICKS, uuid -> {
+
+        Player player = Bukkit.getPlayer(uuid);
+        if (player != null) {
+            visibility.markDirty(player);
+        }
+    });
     private static final PacketListener BRIDGE = Versioned.getInstance(PacketListener.class);
     private static final Map<UUID, ImageListener> LISTENER_TASKS = new HashMap<>(4);
 
@@ -99,7 +111,6 @@ public class Images extends JavaPlugin implements Listener {
         instance = this;
         Logger.initialize(this.getLogger());
         imagesDirectory = this.getDataFolder();
-        PacketListener.getImages = () -> IMAGES;
         setFieldValue(Scheduler.class, null, "instance", this);
         setFieldValue(TimeoutMetadata.class, null, "instance", this);
     }
@@ -129,7 +140,39 @@ public class Images extends JavaPlugin implements Listener {
         MapHelper.invisible = config.getBoolean("invisible-frames", true);
         MapHelper.showDistance = config.getInt("show-distance", 64);
         MapHelper.hideDistance = config.getInt("hide-distance", 128);
+        MapHelper.preEncode = config.getBoolean("pre-encode-maps", false);
+        Viewer.bandwidth = config.getInt("bandwidth", 131072);
+        Viewer.backFaceMargin = config.getBoolean("back-face-culling.enabled", true) ?
+                config.getDouble("back-face-culling.margin", 1) : -1;
+        Viewer.clientViewDistance = config.getBoolean("view-distance.client", true);
+        Viewer.trackingRange = config.getInt("view-distance.max", 0);
+        if (config.getBoolean("view-distance.tracking-range", false)) {
+
+            // Item frames are tracked as miscellaneous entities
+            int range = Bukkit.spigot().getConfig().getInt("world-settings.default.entity-tracking-range.misc", 0);
+            if (range > 0) {
+                Viewer.trackingRange = Viewer.trackingRange > 0 ? Math.min(Viewer.trackingRange, range) : range;
+            }
+        }
+        LoadController.enabled = config.getBoolean("load-control.enabled", true);
+        LoadController.maxTickTime = config.getDouble("load-control.max-tick-time", 55);
+        LoadController.maxQueued = config.getInt("load-control.max-queued", 512);
+        Viewer.waitForChunks = config.getBoolean("wait-for-chunks", true);
+        VisibilityService.joinWindow = config.getInt("join-window", 100);
+        int cpuThreads = config.getInt("executors.cpu.threads", 0);
+        Scheduler.startPools(cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors(),
+                Math.max(1, config.getInt("executors.cpu.queue", 256)),
+                Math.max(1, config.getInt("executors.io.threads", 4)),
+                Math.max(1, config.getInt("executors.io.queue", 1024)),
+                Math.max(0, config.getInt("executors.io.virtual-threads", 64)));
+        visibility = new VisibilityService(INDEX);
         String type = config.getString("database.type").toUpperCase(Locale.ENGLISH);
+        ConnectionPool.Settings pool = new ConnectionPool.Settings(
+                config.getInt("database.pool.max-connections", 4),
+                config.getInt("database.pool.idle-timeout", 300),
+                config.getInt("database.pool.statement-cache", 16)
+        );
+        int batchSize = config.getInt("database.batch-size", 500);
         switch (type) {
             case "MYSQL":
                 dataManager = new MySQLDataManager(
@@ -137,11 +180,13 @@ public class Images extends JavaPlugin implements Listener {
                         config.getInt("database.port"),
                         config.getString("database.schema"),
                         config.getString("database.user"),
-                        config.getString("database.password")
+                        config.getString("database.password"),
+                        pool,
+                        batchSize
                 );
                 break;
             case "SQLITE":
-                dataManager = new SQLiteDataManager(new File(imagesDirectory, "images.db"));
+                dataManager = new SQLiteDataManager(new File(imagesDirectory, "images.db"), pool, batchSize);
                 break;
             case "FILE":
                 dataManager = new FileDataManager(new File(imagesDirectory, "images.cimg"));
@@ -159,30 +204,36 @@ public class Images extends JavaPlugin implements Listener {
             dataManager.initialize();
         }
 
-        Scheduler.laterAsync(() -> {
-            IMAGES.addAll(dataManager.load());
+        Scheduler.later(() -> Scheduler.io(() -> {
+            addImages(dataManager.load());
             Logger.info("Loaded {} images...", IMAGES.size());
             CommandRegistry.registerCommands();
-        }, 40L);
+        }), 40L);
 
-        Scheduler.repeatAsync(() -> {
+        Scheduler.repeatAsync(Viewer::sendQueued, 1, 1);
+        visibility.start();
+        if (Viewer.waitForChunks) {
+            new ChunkTracker(INDEX, visibility).register(this);
+        }
+        LoadController.start();
+        Scheduler.repeat(SETTLE_TIMER::tick, 1, 1);
+    }
 
-            try {
+    @Override
+    public void onDisable() {
 
-                long now = System.currentTimeMillis();
-                LAST_MOVE_TIMES.forEach((uuid, time) -> {
+        if (visibility != null) {
+            visibility.stop();
+        }
 
-                    if (now - time > 2500) { // More than 2.5 seconds
+        LoadController.stop();
+        // Let any saves that are still waiting finish
+        // before the database is closed under them
+        Scheduler.stopPools();
 
-                        Player player = Bukkit.getPlayer(uuid);
-                        if (player != null) {
-                            refreshImages(player, player.getLocation());
-                        }
-                    }
-                });
-            } catch (ConcurrentModificationException ignored) {
-            }
-        }, 200, 30);
+        if (dataManager != null) {
+            dataManager.close();
+        }
     }
 
     @EventHandler
@@ -191,8 +242,8 @@ public class Images extends JavaPlugin implements Listener {
     public void onJoin(PlayerJoinEvent event) {
 
         Player player = event.getPlayer();
-        Location location = player.getLocation();
-        Scheduler.laterAsync(() -> this.refreshImages(player, location), 20L);
+        Viewer.get(player);
+        visibility.admit(player);
         if (protocolLib) {
             return;
         }
@@ -218,45 +269,46 @@ public class Images extends JavaPlugin implements Listener {
 
     @EventHandler
     public void onQuit(PlayerQuitEvent event) {
-
         Player player = event.getPlayer();
-        Scheduler.async(() -> {
-
-            CustomImage[] images;
-            synchronized (IMAGES) {
-                images = IMAGES.toArray(EMPTY_IMAGES_ARRAY);
-            }
-
-            for (CustomImage image : images) {
-                image.remove(player, false);
-            }
-        });
+        SETTLE_TIMER.cancel(player.getUniqueId());
+        Viewer.remove(player);
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onRespawn(PlayerRespawnEvent event) {
 
         Player player = event.getPlayer();
-        Location location = event.getRespawnLocation();
-        Scheduler.laterAsync(() -> {
-
-            CustomImage[] images;
-            synchronized (IMAGES) {
-                images = IMAGES.toArray(EMPTY_IMAGES_ARRAY);
-            }
+        Viewer viewer = Viewer.getIfPresent(player);
+        if (viewer == null) {
+            return;
+        }
 
-            for (CustomImage image : images) {
-                image.remove(player, true);
-                image.refresh(player, location);
+        viewer.resetMaps();
+        Scheduler.later(() -> {
+            // The player may have left since respawning
+            if (Viewer.getIfPresent(player) == viewer) {
+                viewer.hideAll();
+                visibility.markDirty(player);
             }
         }, 20L);
     }
 
     @EventHandler
     public void onWorld(PlayerChangedWorldEvent event) {
+
         Player player = event.getPlayer();
-        Location location = player.getLocation();
-        Scheduler.laterAsync(() -> this.refreshImages(player, location), 20L);
+        Viewer viewer = Viewer.getIfPresent(player);
+        if (viewer != null) {
+            // The client drops its maps when changing worlds
+            viewer.resetMaps();
+        }
+
+        Scheduler.later(() -> visibility.markDirty(player), 20L);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent event) {
+        visibility.markDirty(event.getPlayer());
     }
 
     @EventHandler
@@ -265,12 +317,13 @@ public class Images extends JavaPlugin implements Listener {
         Player player = event.getPlayer();
         Location from = event.getFrom(), to = event.getTo();
         if (!LocationUtil.isSameBlock(from, to)) {
-            LAST_MOVE_TIMES.put(player.getUniqueId(), System.currentTimeMillis());
+            // Refresh once more when the player stops moving
+            SETTLE_TIMER.schedule(player.getUniqueId(), SETTLE_TICKS);
         }
 
         if (from.getBlockX() >> 4 != to.getBlockX() >> 4 ||
                 from.getBlockZ() >> 4 != to.getBlockZ() >> 4) {
-            Scheduler.async(() -> this.refreshImages(player, to));
+            visibility.markDirty(player);
         }
     }
 
@@ -418,13 +471,28 @@ public class Images extends JavaPlugin implements Listener {
      */
     public static boolean addImage(CustomImage image) {
 
-        if (IMAGES.contains(image)) {
-            return false;
+        synchronized (IMAGES) {
+
+            if (IMAGES.contains(image) || !ADDING.add(image)) {
+                return false;
+            }
         }
+        // Save without holding the lock so that other images can be
+        // added and removed while this one waits on the database
+        try {
+            dataManager.save(image);
+            synchronized (IMAGES) {
+                IMAGES.add(image);
+                INDEX.add(image);
+                SectionRegistry.register(image);
+            }
+            // Show it to anyone already nearby without waiting for them to move
+            visibility.markNear(Collections.singletonList(image));
+        } finally {
 
-        dataManager.save(image);
-        synchronized (IMAGES) {
-            IMAGES.add(image);
+            synchronized (IMAGES) {
+                ADDING.remove(image);
+            }
         }
 
         return true;
@@ -440,7 +508,11 @@ public class Images extends JavaPlugin implements Listener {
 
         synchronized (IMAGES) {
             IMAGES.addAll(images);
+            images.forEach(INDEX::add);
+            SectionRegistry.register(images);
         }
+
+        visibility.markNear(images);
     }
 
     /**
@@ -453,9 +525,17 @@ public class Images extends JavaPlugin implements Listener {
     public static boolean removeImage(CustomImage image) {
 
         synchronized (IMAGES) {
-            dataManager.delete(image);
-            return IMAGES.remove(image);
+
+            if (!IMAGES.remove(image)) {
+                return false;
+            }
+
+            INDEX.remove(image);
+            SectionRegistry.unregister(image);
         }
+
+        dataManager.delete(image);
+        return true;
     }
 
     /**
@@ -466,21 +546,6 @@ public class Images extends JavaPlugin implements Listener {
      * @return The images matching the criteria.
      */
     public static List<CustomImage> getMatchingImages(Predicate<CustomImage> test) {
-
-        synchronized (IMAGES) {
-            return IMAGES.stream().filter(test).collect(toList());
-        }
-    }
-
-    private void refreshImages(Player player, Location location) {
-
-        CustomImage[] images;
-        synchronized (IMAGES) {
-            images = IMAGES.toArray(EMPTY_IMAGES_ARRAY);
-        }
-
-        for (CustomImage image : images) {
-            image.refresh(player, location);
-        }
+        return IMAGES.stream().filter(test).collect(toList());
     }
 }
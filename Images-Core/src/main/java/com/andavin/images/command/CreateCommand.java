@@ -193,7 +193,7 @@ final class CreateCommand extends BaseCommand implements Listener {
                     }
                 }
 
-                Scheduler.async(() -> {
+                Scheduler.io(() -> {
 
                     player.sendMessage("§aStarting image paste");
                     BufferedImage image = task.readImage();
@@ -201,14 +201,25 @@ final class CreateCommand extends BaseCommand implements Listener {
                         player.sendMessage("§cInvalid image file! Please choose another.");
                         return;
                     }
-
-                    CustomImage customImage = new CustomImage(player.getUniqueId(),
-                            task.nameSupplier.get(), location, direction, image);
-                    customImage.refresh(player, playerLocation);
-                    if (Images.addImage(customImage)) {
-                        player.sendMessage("§aSuccessfully created image§f " + customImage.getImageName());
-                    } else {
-                        player.sendMessage("§cFailed to create image at that location");
+                    // Reading may have downloaded the image, but converting
+                    // it is pure computation so hand it to the CPU pool
+                    boolean queued = Scheduler.cpu(() -> {
+
+                        CustomImage customImage = new CustomImage(player.getUniqueId(),
+                                task.nameSupplier.get(), location, direction, image);
+                        customImage.refresh(player, playerLocation);
+                        Scheduler.io(() -> {
+
+                            if (Images.addImage(customImage)) {
+                                player.sendMessage("§aSuccessfully created image§f " + customImage.getImageName());
+                            } else {
+                                player.sendMessage("§cFailed to create image at that location");
+                            }
+                        });
+                    });
+
+                    if (!queued) {
+                        player.sendMessage("§cThe server is too busy to create images right now. Please try again.");
                     }
                 });
 
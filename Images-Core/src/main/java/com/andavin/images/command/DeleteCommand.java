@@ -91,7 +91,7 @@ final class DeleteCommand extends BaseCommand implements Listener {
 
             if (action == InteractType.RIGHT_CLICK) {
 
-                Scheduler.async(() -> {
+                Scheduler.io(() -> {
 
                     if (this.deleting.remove(player.getUniqueId()) && Images.removeImage(image)) {
                         image.destroy();
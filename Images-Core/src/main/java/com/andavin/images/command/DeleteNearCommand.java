@@ -5,6 +5,7 @@ import com.andavin.images.image.CustomImage;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,15 +45,16 @@ final class DeleteNearCommand extends BaseCommand {
             return;
         }
 
-        int success = 0;
+        List<CustomImage> removed = new ArrayList<>(images.size());
         for (CustomImage image : images) {
 
             if (Images.removeImage(image)) {
-                image.destroy();
-                success++;
+                removed.add(image);
             }
         }
 
+        CustomImage.destroy(removed);
+        int success = removed.size();
         if (success == images.size()) {
             player.sendMessage("§aSuccessfully deleted §f" + success + "§a images within §f" + range + " blocks");
         } else {
@@ -77,7 +77,7 @@ public class ImportCommand extends BaseCommand {
                 "§eThis will cause sever lag. Please wait...");
         List<CustomImage> importedImages = LegacyImportManager.importImages(
                 Images.getImagesDirectory(), Images.getDataManager());
-        Scheduler.async(() -> {
+        Scheduler.io(() -> {
             Images.addImages(importedImages);
             player.sendMessage("§aSuccessfully imported §f" + importedImages.size() + "§a images");
         });
@@ -1,6 +1,7 @@
 package com.andavin.images.command;
 
 import com.andavin.images.Images;
+import com.andavin.images.data.ConnectionPool;
 import com.andavin.images.data.DataManager;
 import com.andavin.images.data.FileDataManager;
 import com.andavin.images.data.MySQLDataManager;
@@ -48,6 +49,13 @@ public final class TransferCommand extends BaseCommand {
 
         player.removeMetadata(KEY, Images.getInstance());
         DataManager current = Images.getDataManager(), to;
+        FileConfiguration config = Images.getInstance().getConfig();
+        ConnectionPool.Settings pool = new ConnectionPool.Settings(
+                config.getInt("database.pool.max-connections", 4),
+                config.getInt("database.pool.idle-timeout", 300),
+                config.getInt("database.pool.statement-cache", 16)
+        );
+        int batchSize = config.getInt("database.batch-size", 500);
         String type = args[0].toUpperCase(Locale.ENGLISH);
         switch (type) {
             case "MYSQL":
@@ -57,13 +65,14 @@ public final class TransferCommand extends BaseCommand {
                     return;
                 }
 
-                FileConfiguration config = Images.getInstance().getConfig();
                 to = new MySQLDataManager(
                         config.getString("database.host"),
                         config.getInt("database.port"),
                         config.getString("database.schema"),
                         config.getString("database.user"),
-                        config.getString("database.password")
+                        config.getString("database.password"),
+                        pool,
+                        batchSize
                 );
 
                 break;
@@ -74,7 +83,7 @@ public final class TransferCommand extends BaseCommand {
                     return;
                 }
 
-                to = new SQLiteDataManager(new File(Images.getImagesDirectory(), "images.db"));
+                to = new SQLiteDataManager(new File(Images.getImagesDirectory(), "images.db"), pool, batchSize);
                 break;
             case "FILE":
 
@@ -91,7 +100,7 @@ public final class TransferCommand extends BaseCommand {
                 return;
         }
 
-        Scheduler.async(() -> {
+        Scheduler.io(() -> {
 
             player.sendMessage("§aInitializing new database...");
             to.initialize();
@@ -111,9 +120,11 @@ public final class TransferCommand extends BaseCommand {
                 player.sendMessage("§eOtherwise, contact the developer");
                 Logger.severe(e);
             }
+
+            to.close();
             // No matter what shutdown
             player.sendMessage("§eShutting down in 5 seconds...");
-            Scheduler.laterAsync(Bukkit::shutdown, 100);
+            Scheduler.later(Bukkit::shutdown, 100);
         });
     }
 
@@ -0,0 +1,292 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A small bounded pool of JDBC {@link Connection Connections}
+ * so that every query does not need to perform a new network
+ * and authentication handshake with the database.
+ * <p>
+ * Connections are handed out most recently used first so that
+ * the least used connections are able to sit idle long enough
+ * to be closed. Any connection that has been idle for a while
+ * is validated before it is handed out again.
+ * <p>
+ * Waiting for a connection uses a {@link ReentrantLock} rather
+ * than a monitor so that a virtual thread that is waiting does
+ * not hold on to the platform thread that is carrying it.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    private static final int VALIDATION_TIMEOUT = 5; // Seconds
+    private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final long BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final String url;
+    private final Properties properties;
+    private final Settings settings;
+    private final long borrowTimeout;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = this.lock.newCondition();
+    private int open;
+    private boolean closed;
+
+    ConnectionPool(String url, Properties properties, Settings settings) {
+        this(url, properties, settings, BORROW_TIMEOUT);
+    }
+
+    ConnectionPool(String url, Properties properties, Settings settings, long borrowTimeout) {
+        checkArgument(borrowTimeout > 0, "borrow timeout must be positive");
+        this.url = checkNotNull(url, "url");
+        this.properties = checkNotNull(properties, "properties");
+        this.settings = checkNotNull(settings, "settings");
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * Borrow a connection from this pool waiting for one to be
+     * returned if the maximum amount are already in use.
+     * <p>
+     * The connection must be {@link PooledConnection#close() closed}
+     * once it is done being used so that it is returned to the pool.
+     *
+     * @return The borrowed connection.
+     * @throws SQLException If a connection could not be opened or
+     *                      none became available in time.
+     */
+    PooledConnection borrow() throws SQLException {
+
+        long deadline = System.currentTimeMillis() + this.borrowTimeout;
+        while (true) {
+
+            PooledConnection connection;
+            List<PooledConnection> evicted = Collections.emptyList();
+            this.lock.lock();
+            try {
+
+                long now = System.currentTimeMillis();
+                evicted = this.evictIdle(now);
+                connection = this.idle.pollFirst();
+                if (connection == null) {
+
+                    if (this.closed) {
+                        throw new SQLException("connection pool is closed");
+                    }
+
+                    if (this.open < this.settings.maxConnections) {
+                        this.open++;
+                        break;
+                    }
+
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        throw new SQLTimeoutException("timed out waiting for a database connection");
+                    }
+
+                    try {
+                        this.available.await(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("interrupted while waiting for a database connection", e);
+                    }
+
+                    continue;
+                }
+
+                if (now - connection.lastUsed < VALIDATION_INTERVAL) {
+                    return connection;
+                }
+            } finally {
+                this.lock.unlock();
+                // Close outside of the lock since this may make a round trip
+                evicted.forEach(PooledConnection::closeConnection);
+            }
+            // Validate outside of the lock since this makes a round trip
+            if (connection.isValid(VALIDATION_TIMEOUT)) {
+                return connection;
+            }
+
+            this.discard(connection);
+        }
+
+        try {
+            return new PooledConnection(this, DriverManager.getConnection(this.url, this.properties),
+                    this.settings.statementCacheSize);
+        } catch (SQLException e) {
+
+            this.discarded();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a connection that was {@link #borrow() borrowed}
+     * so that it may be reused.
+     *
+     * @param connection The connection to return.
+     */
+    void release(PooledConnection connection) {
+
+        boolean reusable;
+        try {
+            reusable = !connection.getConnection().isClosed() && connection.getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        this.lock.lock();
+        try {
+
+            if (reusable && !this.closed) {
+                connection.lastUsed = System.currentTimeMillis();
+                this.idle.addFirst(connection);
+                this.available.signal();
+                return;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.discard(connection);
+    }
+
+    @Override
+    public void close() {
+
+        PooledConnection[] connections;
+        this.lock.lock();
+        try {
+            this.closed = true;
+            connections = this.idle.toArray(new PooledConnection[0]);
+            this.idle.clear();
+            this.available.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        for (PooledConnection connection : connections) {
+            this.discard(connection);
+        }
+    }
+
+    private List<PooledConnection> evictIdle(long now) {
+
+        PooledConnection connection;
+        List<PooledConnection> evicted = Collections.emptyList();
+        while ((connection = this.idle.peekLast()) != null &&
+                now - connection.lastUsed >= this.settings.idleTimeout) {
+
+            this.idle.pollLast();
+            this.open--;
+            if (evicted.isEmpty()) {
+                evicted = new ArrayList<>();
+            }
+
+            evicted.add(connection);
+        }
+
+        return evicted;
+    }
+
+    private void discard(PooledConnection connection) {
+        this.discarded();
+        connection.closeConnection();
+    }
+
+    private void discarded() {
+
+        this.lock.lock();
+        try {
+            this.open--;
+            this.available.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The configurable settings for a {@link ConnectionPool}.
+     */
+    public static final class Settings {
+
+        /**
+         * The settings used when none are configured.
+         */
+        public static final Settings DEFAULT = new Settings(4, 300, 16);
+
+        final int maxConnections, statementCacheSize;
+        final long idleTimeout;
+
+        /**
+         * Create new pool settings.
+         *
+         * @param maxConnections The maximum amount of connections
+         *                       that may be open at one time.
+         * @param idleTimeout The amount of seconds that a connection
+         *                    may sit unused before it is closed.
+         * @param statementCacheSize The maximum amount of prepared
+         *                           statements to keep open per connection.
+         */
+        public Settings(int maxConnections, int idleTimeout, int statementCacheSize) {
+            checkArgument(maxConnections > 0, "max connections must be positive");
+            checkArgument(idleTimeout >= 0, "idle timeout must not be negative");
+            checkArgument(statementCacheSize > 0, "statement cache size must be positive");
+            this.maxConnections = maxConnections;
+            this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeout);
+            this.statementCacheSize = statementCacheSize;
+        }
+
+        /**
+         * Get a copy of these settings that will allow only
+         * a single connection to be open at a time.
+         *
+         * @return The single connection settings.
+         */
+        public Settings singleConnection() {
+            return this.maxConnections == 1 ? this : new Settings(1,
+                    (int) TimeUnit.MILLISECONDS.toSeconds(this.idleTimeout), this.statementCacheSize);
+        }
+    }
+}
@@ -79,4 +79,12 @@ public interface DataManager {
      * @param image The image to delete.
      */
     void delete(CustomImage image);
+
+    /**
+     * Release any resources (e.g. open files or connections)
+     * held by this data manager. It should not be used after
+     * it has been closed.
+     */
+    default void close() {
+    }
 }
@@ -24,23 +24,67 @@
 package com.andavin.images.data;
 
 import com.andavin.images.image.CustomImage;
+import com.andavin.images.image.ImageCodec;
 import com.andavin.reflect.exception.UncheckedClassNotFoundException;
+import com.andavin.util.Logger;
+import com.andavin.util.Scheduler;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.file.StandardOpenOption.*;
 
 /**
+ * A {@link DataManager} that stores all images in a single
+ * append-only log file.
+ * <p>
+ * Every save appends a record containing the {@link ImageCodec encoded}
+ * image and every delete appends a small tombstone record. An index
+ * of the live record for each image ID is rebuilt when the file is
+ * opened so that a single save or delete only costs the size of the
+ * record being written rather than rewriting the entire file. Each
+ * record is forced to disk before the save or delete returns.
+ * <p>
+ * Records that have been replaced or deleted are left in the file
+ * until enough of them accumulate that it is compacted. Compaction
+ * copies the live records to a new file off of the calling thread
+ * and then swaps it in place of the current one. If the swap fails,
+ * the current file is opened again and left as it was.
+ * <p>
+ * All access is guarded by a {@link ReentrantLock} rather than by
+ * synchronizing so that I/O running on virtual threads does not pin
+ * the platform threads that are carrying them while it waits.
+ *
  * @since September 21, 2019
  * @author Andavin
  */
 public class FileDataManager implements DataManager {
 
+    private static final int LOG_MAGIC = 0x43494D4C; // CIML
+    private static final int SNAPSHOT_MAGIC = 0x43494D46; // CIMF
+    private static final byte LOG_VERSION = 1;
+    private static final int FILE_HEADER = 5, RECORD_HEADER = 9;
+    private static final byte PUT = 1, DELETE = 2;
+    /**
+     * The amount of dead bytes that must be in the log before
+     * it will be compacted. The log must also be at least half
+     * dead bytes before it is compacted.
+     */
+    private static final long COMPACT_THRESHOLD = 8 * 1024 * 1024;
+
     private final File dataFile;
+    private final Map<Integer, Record> index = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private int nextId;
+    private long deadBytes, generation;
+    private boolean compacting;
 
     public FileDataManager(File dataFile) {
         checkArgument(!dataFile.exists() || dataFile.isFile(),
@@ -50,80 +94,539 @@ public class FileDataManager implements DataManager {
 
     @Override
     public void initialize() {
+
+        this.lock.lock();
+        try {
+            this.open();
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     @Override
-    public synchronized List<CustomImage> load() {
+    public List<CustomImage> load() {
+
+        this.lock.lock();
+        try {
+
+            this.open();
+            List<CustomImage> images = new ArrayList<>(this.index.size());
+            for (Map.Entry<Integer, Record> entry : this.index.entrySet()) {
+
+                Record record = entry.getValue();
+                ByteBuffer buffer = ByteBuffer.allocate(record.length);
+                readFully(this.channel, buffer, record.offset + RECORD_HEADER);
+                CustomImage image = ImageCodec.decode(buffer.array());
+                image.setId(entry.getKey());
+                images.add(image);
+            }
 
-        if (!this.dataFile.exists()) {
-            return new ArrayList<>();
+            return images;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.unlock();
         }
+    }
+
+    @Override
+    public void save(CustomImage image) {
 
-        byte[] data;
+        this.lock.lock();
         try {
-            data = Files.readAllBytes(this.dataFile.toPath());
+
+            this.open();
+            if (image.getId() == -1) {
+                image.setId(this.nextId++);
+            }
+
+            Record record = this.append(PUT, image.getId(), ImageCodec.encode(image));
+            Record previous = this.index.put(image.getId(), record);
+            if (previous != null) {
+                this.deadBytes += previous.size();
+                this.checkCompaction();
+            }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(List<CustomImage> images) {
+
+        if (images.isEmpty()) {
+            return;
         }
 
-        if (data.length == 0) {
-            return new ArrayList<>();
+        this.lock.lock();
+        try {
+            this.rewrite(images);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.unlock();
         }
+    }
 
-        List<CustomImage> images;
-        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(data))) {
+    @Override
+    public void delete(CustomImage image) {
 
-            int capacity = stream.readInt();
-            images = new ArrayList<>(capacity);
-            for (int i = 0; i < capacity; i++) {
-                images.add((CustomImage) stream.readObject());
+        this.lock.lock();
+        try {
+
+            this.open();
+            Record previous = this.index.remove(image.getId());
+            if (previous == null) {
+                return;
             }
+
+            this.append(DELETE, image.getId(), new byte[0]);
+            this.deadBytes += previous.size() + RECORD_HEADER;
+            this.checkCompaction();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
-        } catch (ClassNotFoundException e) {
-            throw new UncheckedClassNotFoundException(e.getMessage(), e);
+        } finally {
+            this.lock.unlock();
         }
-
-        return images;
     }
 
     @Override
-    public void save(CustomImage image) {
-        // We have to read all of the images, add one to it and
-        // write them all again so as to not overwrite anything
-        List<CustomImage> images = this.load();
-        images.add(image);
-        this.saveAll(images);
+    public void close() {
+
+        this.lock.lock();
+        try {
+
+            if (this.channel != null) {
+
+                try {
+                    this.channel.close();
+                } catch (IOException e) {
+                    Logger.severe(e);
+                }
+
+                this.channel = null;
+                this.index.clear();
+                this.nextId = 0;
+                this.deadBytes = 0;
+                this.generation++;
+            }
+        } finally {
+            this.lock.unlock();
+        }
     }
 
-    @Override
-    public synchronized void saveAll(List<CustomImage> images) {
+    private void open() {
 
-        if (images.isEmpty()) {
+        if (this.channel != null) {
             return;
         }
 
+        try {
+
+            if (this.dataFile.length() >= 4 && readMagic(this.dataFile) != LOG_MAGIC) {
+                this.convert();
+                return;
+            }
+
+            this.channel = FileChannel.open(this.dataFile.toPath(), CREATE, READ, WRITE);
+            if (this.channel.size() < FILE_HEADER) {
+                this.channel.truncate(0);
+                writeHeader(this.channel);
+            } else {
+                this.scan();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void scan() throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(this.channel, (ByteBuffer) header.limit(FILE_HEADER), 0);
+        header.flip();
+        header.getInt();
+        byte version = header.get();
+        if (version != LOG_VERSION) {
+            throw new IOException("unknown image log version " + version);
+        }
+
+        long offset = FILE_HEADER, size = this.channel.size();
+        while (size - offset >= RECORD_HEADER) {
+
+            header.clear();
+            readFully(this.channel, header, offset);
+            header.flip();
+            byte type = header.get();
+            int id = header.getInt(), length = header.getInt();
+            long recordSize = RECORD_HEADER + (long) length;
+            if (length < 0 || offset + recordSize > size) {
+                break; // The last write never finished
+            }
+
+            Record previous;
+            switch (type) {
+                case PUT:
+                    previous = this.index.put(id, new Record(offset, length));
+                    break;
+                case DELETE:
+                    previous = this.index.remove(id);
+                    this.deadBytes += recordSize;
+                    break;
+                default:
+                    throw new IOException("corrupt image log record at " + offset);
+            }
+
+            if (previous != null) {
+                this.deadBytes += previous.size();
+            }
+
+            this.nextId = Math.max(this.nextId, id + 1);
+            offset += recordSize;
+        }
+
+        if (offset < size) {
+            Logger.warn("Discarding {} bytes of incomplete image data", size - offset);
+            this.channel.truncate(offset);
+        }
+    }
+
+    private Record append(byte type, int id, byte[] data) throws IOException {
+        long offset = this.channel.size();
+        writeRecord(this.channel, offset, type, id, data);
+        // Make sure the record is on disk before the caller is told that it was saved
+        this.channel.force(false);
+        return new Record(offset, data.length);
+    }
+
+    private void checkCompaction() throws IOException {
+
+        if (!this.compacting && this.deadBytes >= COMPACT_THRESHOLD &&
+                this.deadBytes * 2 >= this.channel.size()) {
+            this.compacting = true;
+            Scheduler.io(this::compact);
+        }
+    }
+
+    private void compact() {
+
+        long end, generation;
+        FileChannel source;
+        Map<Integer, Record> snapshot;
+        this.lock.lock();
+        try {
+            source = this.channel;
+            generation = this.generation;
+            snapshot = new HashMap<>(this.index);
+            try {
+                end = source.size();
+            } catch (IOException e) {
+                this.compacting = false;
+                Logger.severe(e);
+                return;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        File compactFile = new File(this.dataFile.getAbsolutePath() + ".compact");
+        try (FileChannel out = FileChannel.open(compactFile.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)) {
+
+            // Copy all of the live records without blocking any writes
+            long position = writeHeader(out);
+            Map<Integer, Record> index = new HashMap<>(snapshot.size());
+            for (Map.Entry<Integer, Record> entry : snapshot.entrySet()) {
+                Record record = entry.getValue();
+                copy(source, record.offset, record.size(), out, position);
+                index.put(entry.getKey(), new Record(position, record.length));
+                position += record.size();
+            }
+
+            this.lock.lock();
+            try {
+
+                if (this.generation != generation) {
+                    return; // The whole file was rewritten in the meantime
+                }
+                // Replay anything that was written since the snapshot
+                long dead = 0;
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+                for (long offset = end, size = source.size(); offset < size; ) {
+
+                    header.clear();
+                    readFully(source, header, offset);
+                    header.flip();
+                    byte type = header.get();
+                    int id = header.getInt(), length = header.getInt();
+                    int recordSize = RECORD_HEADER + length;
+                    Record previous;
+                    if (type == PUT) {
+                        previous = index.put(id, new Record(position, length));
+                    } else {
+                        previous = index.remove(id);
+                        dead += recordSize;
+                    }
+
+                    if (previous != null) {
+                        dead += previous.size();
+                    }
+
+                    copy(source, offset, recordSize, out, position);
+                    position += recordSize;
+                    offset += recordSize;
+                }
+
+                out.force(true);
+                out.close();
+                try {
+                    this.replace(compactFile);
+                } catch (IOException e) {
+                    Logger.severe(e, "Failed to compact image data");
+                    return;
+                }
+
+                if (this.channel == null) {
+                    return; // The file will be scanned again when it is next used
+                }
+
+                this.index.clear();
+                this.index.putAll(index);
+                this.deadBytes = dead;
+                this.generation++;
+                Logger.debug("Compacted image data from {} to {} bytes", end, position);
+            } finally {
+                this.lock.unlock();
+            }
+        } catch (IOException e) {
+
+            this.lock.lock();
+            try {
+                // Ignore if the file was rewritten out from under us
+                if (this.generation == generation) {
+                    Logger.severe(e, "Failed to compact image data");
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        } finally {
+
+            this.lock.lock();
+            try {
+                deleteQuietly(compactFile);
+                this.compacting = false;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /*
+     * Write a brand new log containing exactly the given images
+     * and replace the current file with it.
+     */
+    private void rewrite(List<CustomImage> images) throws IOException {
+
+        int nextId = 0;
+        for (CustomImage image : images) {
+            nextId = Math.max(nextId, image.getId() + 1);
+        }
+
+        long position;
+        Map<Integer, Record> index = new HashMap<>(images.size());
         File dataFile = new File(this.dataFile.getAbsolutePath() + ".tmp");
-        try (ObjectOutputStream stream = new ObjectOutputStream(new FileOutputStream(dataFile))) {
+        try (FileChannel out = FileChannel.open(dataFile.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)) {
 
-            stream.writeInt(images.size());
+            position = writeHeader(out);
             for (CustomImage image : images) {
-                stream.writeObject(image);
+
+                if (image.getId() == -1) {
+                    image.setId(nextId++);
+                }
+
+                byte[] data = ImageCodec.encode(image);
+                writeRecord(out, position, PUT, image.getId(), data);
+                index.put(image.getId(), new Record(position, data.length));
+                position += RECORD_HEADER + data.length;
+            }
+
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(dataFile);
+            throw e;
+        }
+
+        this.replace(dataFile);
+        if (this.channel == null) {
+            throw new IOException("failed to open " + this.dataFile + " after replacing it");
+        }
+
+        this.index.clear();
+        this.index.putAll(index);
+        this.nextId = nextId;
+        this.deadBytes = 0;
+        this.generation++;
+    }
+
+    /*
+     * Move the given file in place of the data file and open it.
+     * If the move fails, the temporary file is deleted and the data
+     * file that is still in place is opened again so that writes carry
+     * on as before. If it cannot be opened at all, the channel is left
+     * null and everything is forgotten so that it is scanned again the
+     * next time that it is used.
+     */
+    private void replace(File file) throws IOException {
+
+        if (this.channel != null) {
+            this.channel.close();
+        }
+
+        IOException failure = null;
+        try {
+            Files.move(file.toPath(), this.dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            failure = e;
+        }
+
+        try {
+            this.channel = FileChannel.open(this.dataFile.toPath(), READ, WRITE);
+        } catch (IOException e) {
+
+            this.channel = null;
+            this.index.clear();
+            this.nextId = 0;
+            this.deadBytes = 0;
+            this.generation++;
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
             }
+        }
 
-            Files.move(dataFile.toPath(), this.dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+
+        try {
+            Files.deleteIfExists(file.toPath());
         } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            Logger.debug(e);
         }
     }
 
-    @Override
-    public void delete(CustomImage image) {
-        // We have to read all of the images, remove one from it
-        // and write them all again so as to not overwrite anything
-        List<CustomImage> images = this.load();
-        if (images.remove(image)) {
-            this.saveAll(images);
+    /*
+     * Convert a data file written in one of the older whole
+     * file formats into the log format.
+     */
+    private void convert() throws IOException {
+
+        byte[] data = Files.readAllBytes(this.dataFile.toPath());
+        List<CustomImage> images = ImageCodec.isLegacy(data) ? readLegacy(data) : readSnapshot(data);
+        Logger.info("Converting {} images to the new storage format...", images.size());
+        this.rewrite(images);
+    }
+
+    private static List<CustomImage> readSnapshot(byte[] data) throws IOException {
+
+        try (DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data))) {
+
+            int magic = stream.readInt();
+            if (magic != SNAPSHOT_MAGIC) {
+                throw new IOException("not an image data file: " + Integer.toHexString(magic));
+            }
+
+            int capacity = stream.readInt();
+            List<CustomImage> images = new ArrayList<>(capacity);
+            for (int i = 0; i < capacity; i++) {
+                images.add(ImageCodec.read(stream));
+            }
+
+            return images;
+        }
+    }
+
+    private static List<CustomImage> readLegacy(byte[] data) throws IOException {
+
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(data))) {
+
+            int capacity = stream.readInt();
+            List<CustomImage> images = new ArrayList<>(capacity);
+            for (int i = 0; i < capacity; i++) {
+                images.add((CustomImage) stream.readObject());
+            }
+
+            return images;
+        } catch (ClassNotFoundException e) {
+            throw new UncheckedClassNotFoundException(e.getMessage(), e);
+        }
+    }
+
+    private static int readMagic(File file) throws IOException {
+
+        try (DataInputStream stream = new DataInputStream(new FileInputStream(file))) {
+            return stream.readInt();
+        }
+    }
+
+    private static long writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER);
+        buffer.putInt(LOG_MAGIC).put(LOG_VERSION).flip();
+        writeFully(channel, buffer, 0);
+        return FILE_HEADER;
+    }
+
+    private static void writeRecord(FileChannel channel, long offset, byte type, int id, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + data.length);
+        buffer.put(type).putInt(id).putInt(data.length).put(data).flip();
+        writeFully(channel, buffer, offset);
+    }
+
+    private static void copy(FileChannel from, long offset, int length, FileChannel to, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(from, buffer, offset);
+        buffer.flip();
+        writeFully(to, buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+
+        while (buffer.hasRemaining()) {
+
+            int read = channel.read(buffer, offset);
+            if (read == -1) {
+                throw new EOFException();
+            }
+
+            offset += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static final class Record {
+
+        final long offset;
+        final int length;
+
+        Record(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int size() {
+            return RECORD_HEADER + this.length;
         }
     }
 }
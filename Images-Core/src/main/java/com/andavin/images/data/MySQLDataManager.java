@@ -25,7 +25,6 @@ package com.andavin.images.data;
 
 import com.andavin.util.Logger;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
@@ -37,10 +36,15 @@ import static com.andavin.reflect.Reflection.findClass;
  */
 public class MySQLDataManager extends SQLDataManager {
 
-    private static final String FORMAT = "jdbc:mysql://%s:%d/%s?useSSL=false";
+    private static final String FORMAT = "jdbc:mysql://%s:%d/%s?useSSL=false&rewriteBatchedStatements=true";
 
     public MySQLDataManager(String host, int port, String schema, String user, String password) {
-        super(String.format(FORMAT, host, port, schema), user, password);
+        this(host, port, schema, user, password, ConnectionPool.Settings.DEFAULT, DEFAULT_BATCH_SIZE);
+    }
+
+    public MySQLDataManager(String host, int port, String schema, String user,
+                            String password, ConnectionPool.Settings settings, int batchSize) {
+        super(String.format(FORMAT, host, port, schema), user, password, settings, batchSize);
     }
 
     @Override
@@ -48,8 +52,8 @@ public class MySQLDataManager extends SQLDataManager {
         // Initialize the driver for versions earlier than JDBC 4
         // (i.e. before Minecraft 1.11 MySQL did not auto load)
         findClass("com.mysql.jdbc.Driver");
-        try (Connection connection = this.getConnection();
-             PreparedStatement create = connection.prepareStatement(
+        try (PooledConnection connection = this.getConnection();
+             PreparedStatement create = connection.getConnection().prepareStatement(
                      "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "(" +
                              "`id` INT AUTO_INCREMENT PRIMARY KEY," +
                              "`data` MEDIUMBLOB NOT NULL)")) {
@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.data;
+
+import com.andavin.util.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link Connection} that has been borrowed from a
+ * {@link ConnectionPool} along with a cache of the
+ * {@link PreparedStatement PreparedStatements} that
+ * have been created on it.
+ * <p>
+ * Statements returned from {@link #prepare(String)} are owned
+ * by this connection and should <b>not</b> be closed by the caller.
+ * Closing this connection returns it to the pool.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+final class PooledConnection implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    long lastUsed;
+
+    PooledConnection(ConnectionPool pool, Connection connection, int cacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.lastUsed = System.currentTimeMillis();
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+
+                if (this.size() > cacheSize) {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the underlying JDBC connection.
+     *
+     * @return The connection.
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Get a cached {@link PreparedStatement} for the given
+     * SQL or prepare a new one if it has not been used on
+     * this connection yet.
+     *
+     * @param sql The SQL to prepare.
+     * @return The prepared statement with its parameters and batch cleared.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        return this.prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Get a cached {@link PreparedStatement} for the given
+     * SQL or prepare a new one if it has not been used on
+     * this connection yet.
+     *
+     * @param sql The SQL to prepare.
+     * @param autoGeneratedKeys If generated keys should be returned
+     *                          (e.g. {@link Statement#RETURN_GENERATED_KEYS}).
+     * @return The prepared statement with its parameters and batch cleared.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+
+        String key = autoGeneratedKeys + sql;
+        PreparedStatement statement = this.statements.get(key);
+        if (statement == null || statement.isClosed()) {
+            statement = this.connection.prepareStatement(sql, autoGeneratedKeys);
+            this.statements.put(key, statement);
+        } else {
+            // Drop anything left over from a batch that failed part way
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Tell if the underlying connection is still usable.
+     *
+     * @param timeout The amount of seconds to wait for the database.
+     * @return If the connection is valid.
+     */
+    boolean isValid(int timeout) {
+
+        try {
+            return this.connection.isValid(timeout);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return this connection to the pool it was borrowed from.
+     */
+    @Override
+    public void close() {
+        this.pool.release(this);
+    }
+
+    /**
+     * Close all of the cached statements and the underlying
+     * connection itself.
+     */
+    void closeConnection() {
+
+        this.statements.values().forEach(PooledConnection::closeStatement);
+        this.statements.clear();
+        try {
+            this.connection.close();
+        } catch (SQLException e) {
+            Logger.debug(e);
+        }
+    }
+
+    private static void closeStatement(PreparedStatement statement) {
+
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            Logger.debug(e);
+        }
+    }
+}
@@ -24,15 +24,16 @@
 package com.andavin.images.data;
 
 import com.andavin.images.image.CustomImage;
-import com.andavin.reflect.exception.UncheckedClassNotFoundException;
+import com.andavin.images.image.ImageCodec;
 import com.andavin.util.Logger;
 
-import java.io.*;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
@@ -43,38 +44,64 @@ import static com.google.common.base.Preconditions.checkState;
 abstract class SQLDataManager implements DataManager {
 
     static final String TABLE_NAME = "`custom_images`";
-    private final String url;
-    private final Properties properties = new Properties();
+    private static final String SELECT = "SELECT `id`, `data` FROM " + TABLE_NAME;
+    private static final String INSERT = "INSERT INTO " + TABLE_NAME + "(`data`) VALUES (?)";
+    private static final String UPDATE = "UPDATE " + TABLE_NAME + " SET `data` = ? WHERE `id` = ?";
+    private static final String DELETE = "DELETE FROM " + TABLE_NAME + " WHERE `id` = ?";
+    /**
+     * The default amount of images to write per transaction
+     * in {@link #saveAll(List)}.
+     */
+    static final int DEFAULT_BATCH_SIZE = 500;
+    private final ConnectionPool pool;
+    private final int batchSize;
+    // A lock rather than synchronized so that virtual threads
+    // waiting to write do not pin their carrier threads
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    SQLDataManager(String url, ConnectionPool.Settings settings, int batchSize) {
+        this(url, new Properties(), settings, batchSize);
+    }
 
-    SQLDataManager(String url) {
-        this.url = checkNotNull(url, "url");
+    SQLDataManager(String url, String user, String password, ConnectionPool.Settings settings, int batchSize) {
+        this(url, credentials(user, password), settings, batchSize);
     }
 
-    SQLDataManager(String url, String user, String password) {
-        this(url);
-        this.properties.put("user", checkNotNull(user, "user"));
-        this.properties.put("password", checkNotNull(password, "password"));
+    private SQLDataManager(String url, Properties properties, ConnectionPool.Settings settings, int batchSize) {
+        checkArgument(batchSize > 0, "batch size must be positive");
+        this.pool = new ConnectionPool(checkNotNull(url, "url"), properties, settings);
+        this.batchSize = batchSize;
     }
 
     @Override
     public List<CustomImage> load() {
 
-        List<CustomImage> images = new ArrayList<>();
-        try (Connection connection = this.getConnection();
-             PreparedStatement select = connection.prepareStatement(
-                     "SELECT `id`, `data` FROM " + TABLE_NAME)) {
+        List<CustomImage> images = new ArrayList<>(), legacy = new ArrayList<>();
+        try (PooledConnection connection = this.getConnection()) {
 
-            try (ResultSet result = select.executeQuery()) {
+            try (ResultSet result = connection.prepare(SELECT).executeQuery()) {
 
                 while (result.next()) {
-                    CustomImage image = toImage(result.getBytes("data"));
+
+                    byte[] data = result.getBytes("data");
+                    CustomImage image = ImageCodec.decode(data);
                     image.setId(result.getInt("id"));
                     images.add(image);
+                    if (ImageCodec.isLegacy(data)) {
+                        legacy.add(image);
+                    }
                 }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        // Rewrite anything still stored in the old format so that it
+        // doesn't need to be converted next time. This is done once the
+        // connection is returned since writes take the lock before one.
+        if (!legacy.isEmpty()) {
+            Logger.info("Converting {} images to the new storage format...", legacy.size());
+            this.saveAll(legacy);
+        }
 
         return images;
     }
@@ -82,10 +109,16 @@ abstract class SQLDataManager implements DataManager {
     @Override
     public void save(CustomImage image) {
 
-        try (Connection connection = this.getConnection()) {
+        // Always take the write lock before borrowing a connection,
+        // the same as saveAll, so that the two can never be left
+        // waiting on each other when the pool is exhausted
+        this.writeLock.lock();
+        try (PooledConnection connection = this.getConnection()) {
             save(connection, image);
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            this.writeLock.unlock();
         }
     }
 
@@ -96,13 +129,57 @@ abstract class SQLDataManager implements DataManager {
             return;
         }
 
-        try (Connection connection = this.getConnection()) {
+        List<CustomImage> inserts = new ArrayList<>(), updates = new ArrayList<>();
+        for (CustomImage image : images) {
+            (image.getId() == -1 ? inserts : updates).add(image);
+        }
+
+        this.writeLock.lock();
+        try (PooledConnection connection = this.getConnection()) {
+
+            Connection jdbc = connection.getConnection();
+            jdbc.setAutoCommit(false);
+            try {
+
+                for (int from = 0; from < inserts.size(); from += this.batchSize) {
+
+                    List<CustomImage> batch = inserts.subList(from, Math.min(from + this.batchSize, inserts.size()));
+                    try {
+                        insertBatch(connection, batch);
+                        jdbc.commit();
+                    } catch (SQLException | RuntimeException e) {
+                        // Nothing in the failed batch was actually stored
+                        batch.forEach(image -> image.setId(-1));
+                        throw e;
+                    }
+                }
+
+                for (int from = 0; from < updates.size(); from += this.batchSize) {
+                    updateBatch(connection, updates.subList(from, Math.min(from + this.batchSize, updates.size())));
+                    jdbc.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                // Keep the failure of the batch rather than that of the cleanup
+                try {
+                    jdbc.rollback();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
 
-            for (CustomImage image : images) {
-                save(connection, image);
+                try {
+                    jdbc.setAutoCommit(true);
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+
+                throw e;
             }
+
+            jdbc.setAutoCommit(true);
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            this.writeLock.unlock();
         }
     }
 
@@ -111,9 +188,8 @@ abstract class SQLDataManager implements DataManager {
 
         checkState(image.getId() != -1,
                 "attempted to delete an image with no database ID");
-        try (Connection connection = this.getConnection();
-             PreparedStatement delete = connection.prepareStatement(
-                     "DELETE FROM " + TABLE_NAME + " WHERE `id` = ?")) {
+        try (PooledConnection connection = this.getConnection()) {
+            PreparedStatement delete = connection.prepare(DELETE);
             delete.setInt(1, image.getId());
             delete.executeUpdate();
         } catch (SQLException e) {
@@ -121,69 +197,101 @@ abstract class SQLDataManager implements DataManager {
         }
     }
 
+    @Override
+    public void close() {
+        this.pool.close();
+    }
+
     /**
-     * Create a new {@link Connection} to the SQL database
+     * Borrow a {@link PooledConnection} to the SQL database
      * with the given properties and credentials specified
      * at creation of this data manager.
+     * <p>
+     * The connection must be closed once finished with in
+     * order to return it to the pool.
      *
-     * @return The newly created connection.
+     * @return The borrowed connection.
      * @throws SQLException If something goes wrong while creating
      *                      the connection.
      */
-    Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(this.url, this.properties);
+    PooledConnection getConnection() throws SQLException {
+        return this.pool.borrow();
     }
 
-    private synchronized void save(Connection connection, CustomImage image) throws SQLException {
+    private static void insertBatch(PooledConnection connection, List<CustomImage> images) throws SQLException {
 
-        if (image.getId() == -1) {
-
-            try (PreparedStatement insert = connection.prepareStatement(
-                    "INSERT INTO " + TABLE_NAME + "(`data`) VALUES (?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
+        PreparedStatement insert = connection.prepare(INSERT, Statement.RETURN_GENERATED_KEYS);
+        for (CustomImage image : images) {
+            insert.setBytes(1, ImageCodec.encode(image));
+            insert.addBatch();
+        }
 
-                insert.setObject(1, toByteArray(image));
-                insert.executeUpdate();
-                try (ResultSet result = insert.getGeneratedKeys()) {
+        insert.executeBatch();
+        List<Integer> keys = new ArrayList<>(images.size());
+        try (ResultSet result = insert.getGeneratedKeys()) {
 
-                    if (result.next()) {
-                        image.setId(result.getInt(1));
-                    }
-                }
+            while (result.next()) {
+                keys.add(result.getInt(1));
             }
-
-            return;
         }
 
-        try (PreparedStatement update = connection.prepareStatement(
-                "UPDATE " + TABLE_NAME + " SET `data` = ? WHERE `id` = ?")) {
-            update.setBytes(1, toByteArray(image));
-            update.setInt(2, image.getId());
-            update.executeUpdate();
+        if (keys.size() == images.size()) {
+
+            for (int i = 0; i < keys.size(); i++) {
+                images.get(i).setId(keys.get(i));
+            }
+        } else if (keys.size() == 1) {
+            // Some drivers (i.e. SQLite) only report the last key of a batch, but
+            // with a single writer the rows of one transaction are consecutive
+            int first = keys.get(0) - images.size() + 1;
+            for (int i = 0; i < images.size(); i++) {
+                images.get(i).setId(first + i);
+            }
+        } else {
+            throw new SQLException("expected " + images.size() +
+                    " generated keys, but received " + keys.size());
         }
     }
 
-    private CustomImage toImage(byte[] bytes) {
+    private static void updateBatch(PooledConnection connection, List<CustomImage> images) throws SQLException {
 
-        ByteArrayInputStream byteStream = new ByteArrayInputStream(bytes);
-        try (ObjectInputStream stream = new ObjectInputStream(byteStream)) {
-            return (CustomImage) stream.readObject();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        } catch (ClassNotFoundException e) {
-            throw new UncheckedClassNotFoundException(e.getMessage(), e);
+        PreparedStatement update = connection.prepare(UPDATE);
+        for (CustomImage image : images) {
+            update.setBytes(1, ImageCodec.encode(image));
+            update.setInt(2, image.getId());
+            update.addBatch();
         }
+
+        update.executeBatch();
+    }
+
+    private static Properties credentials(String user, String password) {
+        Properties properties = new Properties();
+        properties.put("user", checkNotNull(user, "user"));
+        properties.put("password", checkNotNull(password, "password"));
+        return properties;
     }
 
-    private byte[] toByteArray(CustomImage image) {
+    private static void save(PooledConnection connection, CustomImage image) throws SQLException {
+
+        if (image.getId() == -1) {
 
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(); // Doesn't need to be closed
-        try (ObjectOutputStream stream = new ObjectOutputStream(byteStream)) {
-            stream.writeObject(image);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            PreparedStatement insert = connection.prepare(INSERT, Statement.RETURN_GENERATED_KEYS);
+            insert.setBytes(1, ImageCodec.encode(image));
+            insert.executeUpdate();
+            try (ResultSet result = insert.getGeneratedKeys()) {
+
+                if (result.next()) {
+                    image.setId(result.getInt(1));
+                }
+            }
+
+            return;
         }
 
-        return byteStream.toByteArray();
+        PreparedStatement update = connection.prepare(UPDATE);
+        update.setBytes(1, ImageCodec.encode(image));
+        update.setInt(2, image.getId());
+        update.executeUpdate();
     }
 }
@@ -26,7 +26,6 @@ package com.andavin.images.data;
 import com.andavin.util.Logger;
 
 import java.io.File;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
@@ -39,7 +38,12 @@ import static com.andavin.reflect.Reflection.findClass;
 public class SQLiteDataManager extends SQLDataManager {
 
     public SQLiteDataManager(File databaseFile) {
-        super("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        this(databaseFile, ConnectionPool.Settings.DEFAULT, DEFAULT_BATCH_SIZE);
+    }
+
+    public SQLiteDataManager(File databaseFile, ConnectionPool.Settings settings, int batchSize) {
+        // SQLite only allows a single writer so extra connections would just contend
+        super("jdbc:sqlite:" + databaseFile.getAbsolutePath(), settings.singleConnection(), batchSize);
     }
 
     @Override
@@ -47,8 +51,8 @@ public class SQLiteDataManager extends SQLDataManager {
         // Initialize the driver for versions earlier than JDBC 4
         // (i.e. before Minecraft 1.11 SQLite did not auto load)
         findClass("org.sqlite.JDBC");
-        try (Connection connection = this.getConnection();
-             PreparedStatement create = connection.prepareStatement(
+        try (PooledConnection connection = this.getConnection();
+             PreparedStatement create = connection.getConnection().prepareStatement(
                      "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "(" +
                              "`id` INTEGER PRIMARY KEY," +
                              "`data` BLOB NOT NULL)")) {
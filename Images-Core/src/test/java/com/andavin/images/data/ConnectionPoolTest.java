@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @since October 18, 2026
+ * @author Andavin
+ */
+class ConnectionPoolTest {
+
+    private static final String CREATE = "CREATE TABLE IF NOT EXISTS `test`(`value` INTEGER)";
+    private static final String INSERT = "INSERT INTO `test`(`value`) VALUES (?)";
+
+    @TempDir
+    File directory;
+    private String url;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+
+        this.url = "jdbc:sqlite:" + new File(this.directory, "pool.db").getAbsolutePath();
+        try (PooledConnection connection = this.pool(new ConnectionPool.Settings(2, 300, 2)).borrow();
+             Statement statement = connection.getConnection().createStatement()) {
+            statement.executeUpdate(CREATE);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.pool.close();
+    }
+
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+
+        Connection first;
+        try (PooledConnection connection = this.pool.borrow()) {
+            first = connection.getConnection();
+        }
+
+        try (PooledConnection connection = this.pool.borrow()) {
+            assertSame(first, connection.getConnection());
+        }
+    }
+
+    @Test
+    void borrowingIsLimitedToMaxConnections() throws SQLException {
+
+        this.pool(new ConnectionPool.Settings(2, 300, 2), 200);
+        try (PooledConnection first = this.pool.borrow();
+             PooledConnection second = this.pool.borrow()) {
+            assertNotSame(first.getConnection(), second.getConnection());
+            assertThrows(SQLTimeoutException.class, this.pool::borrow);
+        }
+    }
+
+    @Test
+    void borrowTimesOut() throws SQLException {
+
+        this.pool(new ConnectionPool.Settings(1, 300, 2), 200);
+        try (PooledConnection ignored = this.pool.borrow()) {
+
+            long start = System.nanoTime();
+            assertThrows(SQLTimeoutException.class, this.pool::borrow);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150,
+                    "borrow should wait before timing out");
+        }
+    }
+
+    @Test
+    void waitingBorrowReceivesReturnedConnection() throws Exception {
+
+        this.pool(new ConnectionPool.Settings(1, 300, 2), 5000);
+        PooledConnection held = this.pool.borrow();
+        Connection expected = held.getConnection();
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+
+            started.countDown();
+            try (PooledConnection connection = this.pool.borrow()) {
+                return connection.getConnection();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertFalse(waiting.isDone(), "borrow should wait for the held connection");
+        held.close();
+        assertSame(expected, waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closedPoolRejectsBorrow() throws SQLException {
+
+        this.pool.borrow().close();
+        this.pool.close();
+        assertThrows(SQLException.class, this.pool::borrow);
+    }
+
+    @Test
+    void statementsAreReused() throws SQLException {
+
+        try (PooledConnection connection = this.pool.borrow()) {
+            assertSame(connection.prepare(INSERT), connection.prepare(INSERT));
+            assertNotSame(connection.prepare(INSERT),
+                    connection.prepare(INSERT, Statement.RETURN_GENERATED_KEYS));
+        }
+    }
+
+    @Test
+    void reusedStatementHasNoLeftoverBatch() throws SQLException {
+
+        try (PooledConnection connection = this.pool.borrow()) {
+
+            // Simulate a batch that failed before it was executed
+            PreparedStatement insert = connection.prepare(INSERT);
+            insert.setInt(1, 1);
+            insert.addBatch();
+
+            insert = connection.prepare(INSERT);
+            insert.setInt(1, 2);
+            insert.addBatch();
+            assertEquals(1, insert.executeBatch().length);
+            assertEquals(1, count(connection));
+        }
+    }
+
+    @Test
+    void evictedStatementsAreClosed() throws SQLException {
+
+        try (PooledConnection connection = this.pool.borrow()) {
+
+            PreparedStatement eldest = connection.prepare(INSERT);
+            connection.prepare("SELECT COUNT(*) FROM `test`");
+            connection.prepare("SELECT `value` FROM `test`");
+            assertTrue(eldest.isClosed());
+            assertNotSame(eldest, connection.prepare(INSERT));
+        }
+    }
+
+    private ConnectionPool pool(ConnectionPool.Settings settings) {
+        return this.pool(settings, 30000);
+    }
+
+    private ConnectionPool pool(ConnectionPool.Settings settings, long borrowTimeout) {
+
+        if (this.pool != null) {
+            this.pool.close();
+        }
+
+        return this.pool = new ConnectionPool(this.url, new Properties(), settings, borrowTimeout);
+    }
+
+    private static int count(PooledConnection connection) throws SQLException {
+
+        try (Statement statement = connection.getConnection().createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM `test`")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.data;
+
+import com.andavin.images.image.CustomImage;
+import com.andavin.images.image.TestImages;
+import com.andavin.util.TaskPool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Measures how many concurrent database operations the I/O pool
+ * gets through against a store where every round trip takes a fixed
+ * amount of time, such as a MySQL server on another machine.
+ * <p>
+ * The store is a JDBC driver that does nothing except wait for the
+ * {@link #LATENCY} on each statement and commit, so the results only
+ * show how well each pool keeps the connections of the {@link
+ * ConnectionPool} busy. Two workloads are run:
+ * <ul>
+ *     <li>saves, which always wait for the write lock of the data
+ *     manager and so run one at a time no matter the pool, and</li>
+ *     <li>deletes, which run on as many connections as are free.</li>
+ * </ul>
+ * Each is run on a pool of platform threads and, on Java 21 or
+ * newer, on a pool of virtual threads. Run the main method on the
+ * test classpath with the optional arguments {@code [operations] [rounds]}.
+ * <p>
+ * This is not run as part of the tests.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class DatabaseBenchmark {
+
+    private static final long LATENCY = 2; // Milliseconds per round trip
+    private static final String URL = "jdbc:images-delay:";
+    // The same defaults as executors.io and database.pool in the config
+    private static final int PLATFORM_THREADS = 4, VIRTUAL_CONCURRENCY = 64;
+    private static final ConnectionPool.Settings POOL = new ConnectionPool.Settings(8, 300, 16);
+
+    public static void main(String[] args) throws Exception {
+
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        DriverManager.registerDriver(new DelayedDriver());
+        System.out.printf("%d operations per round, %d rounds, %dms per round trip, %d connections%n",
+                operations, rounds, LATENCY, POOL.maxConnections);
+        if (!TaskPool.supportsVirtualThreads()) {
+            System.out.println("Virtual threads need Java 21 or newer, only the platform pool is measured");
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            // The first round warms up the JIT
+            String label = round == 1 ? " (warm up)" : "";
+            run("save", label, operations, image -> {}, SQLDataManager::save);
+            run("delete", label, operations, image -> image.setId(1), SQLDataManager::delete);
+        }
+    }
+
+    private static void run(String name, String label, int operations, Consumer<CustomImage> prepare,
+                            Operation operation) throws InterruptedException {
+
+        run(name + " platform" + label, operations, prepare, operation, () -> new TaskPool(null, "I/O",
+                PLATFORM_THREADS, operations, TaskPool.Rejection.DISCARD));
+        if (TaskPool.supportsVirtualThreads()) {
+            run(name + " virtual" + label, operations, prepare, operation, () -> TaskPool.ofVirtual(null, "I/O",
+                    VIRTUAL_CONCURRENCY, operations, TaskPool.Rejection.DISCARD));
+        }
+    }
+
+    private static void run(String name, int operations, Consumer<CustomImage> prepare,
+                            Operation operation, Supplier<TaskPool> factory) throws InterruptedException {
+
+        SQLDataManager dataManager = new SQLDataManager(URL, POOL, SQLDataManager.DEFAULT_BATCH_SIZE) {
+
+            @Override
+            public void initialize() {
+            }
+        };
+
+        List<CustomImage> images = new ArrayList<>(operations);
+        for (int i = 0; i < operations; i++) {
+            CustomImage image = TestImages.create("image-" + i);
+            prepare.accept(image);
+            images.add(image);
+        }
+
+        TaskPool pool = factory.get();
+        try {
+
+            CountDownLatch done = new CountDownLatch(operations);
+            AtomicInteger failed = new AtomicInteger();
+            long start = System.nanoTime();
+            for (CustomImage image : images) {
+
+                boolean submitted = pool.execute(() -> {
+
+                    try {
+                        operation.run(dataManager, image);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+
+                if (!submitted) {
+                    failed.incrementAndGet();
+                    done.countDown();
+                }
+            }
+
+            done.await(10, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-28s %8.0f ops/s %8d ms %6d failed%n", name,
+                    operations / (elapsed / 1e9), TimeUnit.NANOSECONDS.toMillis(elapsed), failed.get());
+        } finally {
+            pool.shutdown(1, TimeUnit.MINUTES);
+            dataManager.close();
+        }
+    }
+
+    private interface Operation {
+
+        void run(SQLDataManager dataManager, CustomImage image);
+    }
+
+    /**
+     * A driver whose connections only wait for the {@link #LATENCY}
+     * on every round trip that a real database would make.
+     */
+    private static final class DelayedDriver implements Driver {
+
+        private final AtomicInteger keys = new AtomicInteger();
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            return this.acceptsURL(url) ? this.connection() : null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        private Connection connection() {
+
+            boolean[] state = { true, false }; // Auto commit, closed
+            return proxy(Connection.class, (proxy, method, args) -> {
+
+                switch (method.getName()) {
+                    case "prepareStatement":
+                        return this.statement();
+                    case "setAutoCommit":
+                        state[0] = (boolean) args[0];
+                        return null;
+                    case "getAutoCommit":
+                        return state[0];
+                    case "commit":
+                    case "rollback":
+                        roundTrip();
+                        return null;
+                    case "isValid":
+                        return !state[1];
+                    case "isClosed":
+                        return state[1];
+                    case "close":
+                        state[1] = true;
+                        return null;
+                    default:
+                        return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+                }
+            });
+        }
+
+        private PreparedStatement statement() {
+
+            int[] batch = { 0 };
+            boolean[] closed = { false };
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+
+                switch (method.getName()) {
+                    case "executeUpdate":
+                        roundTrip();
+                        return 1;
+                    case "addBatch":
+                        batch[0]++;
+                        return null;
+                    case "clearBatch":
+                        batch[0] = 0;
+                        return null;
+                    case "executeBatch":
+                        roundTrip();
+                        int[] counts = new int[batch[0]];
+                        batch[0] = 0;
+                        return counts;
+                    case "executeQuery":
+                        roundTrip();
+                        return this.keys(false);
+                    case "getGeneratedKeys":
+                        return this.keys(true);
+                    case "isClosed":
+                        return closed[0];
+                    case "close":
+                        closed[0] = true;
+                        return null;
+                    default:
+                        return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+                }
+            });
+        }
+
+        private ResultSet keys(boolean generated) {
+
+            boolean[] read = { !generated };
+            int key = this.keys.incrementAndGet();
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+
+                switch (method.getName()) {
+                    case "next":
+                        boolean next = !read[0];
+                        read[0] = true;
+                        return next;
+                    case "getInt":
+                        return key;
+                    default:
+                        return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+                }
+            });
+        }
+
+        private static void roundTrip() throws InterruptedException {
+            Thread.sleep(LATENCY);
+        }
+
+        private static Object defaultValue(Object proxy, String name, Class<?> type, Object[] args) {
+
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "DelayedDriver";
+            }
+
+            if (type == boolean.class) {
+                return false;
+            }
+
+            return type == int.class || type == long.class ? 0 : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.data;
+
+import com.andavin.images.image.CustomImage;
+import com.andavin.images.image.TestImages;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @since October 18, 2026
+ * @author Andavin
+ */
+class SQLiteDataManagerTest {
+
+    @TempDir
+    File directory;
+    private SQLiteDataManager dataManager;
+
+    @BeforeEach
+    void setUp() {
+        // A small batch size so that saveAll spans several transactions
+        this.dataManager = new SQLiteDataManager(new File(this.directory, "images.db"),
+                ConnectionPool.Settings.DEFAULT, 2);
+        this.dataManager.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.dataManager.close();
+    }
+
+    @Test
+    void saveAllAssignsDistinctIds() throws SQLException {
+
+        List<CustomImage> images = images(5);
+        this.dataManager.saveAll(images);
+
+        Set<Integer> ids = new HashSet<>();
+        for (CustomImage image : images) {
+            assertNotEquals(-1, image.getId());
+            ids.add(image.getId());
+        }
+
+        assertEquals(5, ids.size());
+        assertEquals(5, this.count());
+    }
+
+    @Test
+    void saveAllUpdatesSavedImages() throws SQLException {
+
+        CustomImage saved = TestImages.create("saved");
+        this.dataManager.save(saved);
+        int id = saved.getId();
+        assertNotEquals(-1, id);
+
+        CustomImage added = TestImages.create("added");
+        this.dataManager.saveAll(Arrays.asList(saved, added));
+        assertEquals(id, saved.getId());
+        assertNotEquals(-1, added.getId());
+        assertNotEquals(id, added.getId());
+        assertEquals(2, this.count());
+    }
+
+    @Test
+    void failedBatchIsRolledBack() throws SQLException {
+
+        CustomImage good = TestImages.create("good");
+        CustomImage bad = TestImages.create("bad", null); // Cannot be encoded
+        assertThrows(RuntimeException.class, () -> this.dataManager.saveAll(Arrays.asList(good, bad)));
+        assertEquals(-1, good.getId());
+        assertEquals(0, this.count());
+
+        // The connection and its cached statements must still be usable
+        this.dataManager.saveAll(Arrays.asList(good));
+        assertNotEquals(-1, good.getId());
+        assertEquals(1, this.count());
+    }
+
+    @Test
+    void concurrentWritesDoNotDeadlock() {
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+
+                    if (i % 2 == 0) {
+                        futures.add(executor.submit(() -> this.dataManager.save(TestImages.create("single"))));
+                    } else {
+                        futures.add(executor.submit(() -> this.dataManager.saveAll(images(3))));
+                    }
+                }
+
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(10 + 10 * 3, this.count());
+        });
+    }
+
+    private int count() throws SQLException {
+
+        try (PooledConnection connection = this.dataManager.getConnection();
+             Statement statement = connection.getConnection().createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + SQLDataManager.TABLE_NAME)) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    private static List<CustomImage> images(int amount) {
+
+        List<CustomImage> images = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            images.add(TestImages.create("image-" + i));
+        }
+
+        return images;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import org.bukkit.block.BlockFace;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares how quickly {@link ImageCodec} encodes and decodes
+ * images with the legacy Java serialization format that it replaced.
+ * <p>
+ * Sections allocate a map ID from the running server when they are
+ * created, so the images that are measured have no sections. The
+ * pixels of a section are copied as a single array by both formats,
+ * so what is measured is the cost of everything else that is written
+ * for an image. Run the main method on the test classpath with the
+ * optional arguments {@code [images] [rounds]}.
+ * <p>
+ * This is not run as part of the tests.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class ImageCodecBenchmark {
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws IOException {
+
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        TestImages.installServer();
+        BlockFace[] directions = { BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST };
+        List<CustomImage> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(TestImages.createFacing("image-" + i, directions[i % directions.length]));
+        }
+
+        List<byte[]> encoded = new ArrayList<>(count), serialized = new ArrayList<>(count);
+        for (CustomImage image : images) {
+            encoded.add(ImageCodec.encode(image));
+            serialized.add(ImageCodecTest.serialize(image));
+        }
+
+        System.out.printf("%d images per round, %d rounds%n", count, rounds);
+        System.out.printf("%-24s %8d bytes per image%n", "codec", encoded.get(0).length);
+        System.out.printf("%-24s %8d bytes per image%n", "serialization", serialized.get(0).length);
+        for (int round = 1; round <= rounds; round++) {
+            // The first round warms up the JIT
+            String label = round == 1 ? " (warm up)" : "";
+            run("codec encode" + label, images, ImageCodec::encode);
+            run("serialization encode" + label, images, image -> {
+
+                try {
+                    return ImageCodecTest.serialize(image);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            run("codec decode" + label, encoded, ImageCodec::decode);
+            run("serialization decode" + label, serialized, ImageCodecBenchmark::deserialize);
+        }
+    }
+
+    private static <T> void run(String name, List<T> inputs, Function<T, Object> operation) {
+
+        long start = System.nanoTime();
+        for (T input : inputs) {
+            sink = operation.apply(input);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-34s %10.0f ops/s %6d ms%n", name,
+                inputs.size() / (elapsed / 1e9), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private static CustomImage deserialize(byte[] bytes) {
+
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (CustomImage) stream.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import org.bukkit.block.BlockFace;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @since October 18, 2026
+ * @author Andavin
+ */
+class ImageCodecTest {
+
+    private static final BlockFace[] DIRECTIONS = {
+            BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH,
+            BlockFace.WEST, BlockFace.UP, BlockFace.DOWN
+    };
+
+    @BeforeAll
+    static void setUp() {
+        TestImages.installServer();
+    }
+
+    @Test
+    void encodedImagesDecodeToEqualImages() {
+
+        for (BlockFace direction : DIRECTIONS) {
+
+            CustomImage image = TestImages.createFacing("image-" + direction, direction);
+            CustomImage decoded = ImageCodec.decode(ImageCodec.encode(image));
+            assertEquals(image, decoded);
+            assertEquals(direction, decoded.getDirection());
+            assertEquals(image.getCreator(), decoded.getCreator());
+        }
+    }
+
+    @Test
+    void directionsAreWrittenByName() {
+
+        byte[] bytes = ImageCodec.encode(TestImages.createFacing("image", BlockFace.SOUTH));
+        assertTrue(new String(bytes, StandardCharsets.UTF_8).contains("SOUTH"),
+                "direction should be written by name");
+    }
+
+    @Test
+    void ordinalVersionIsStillRead() throws IOException {
+
+        // Written by hand in the layout of version 1
+        CustomImage image = TestImages.createFacing("image", BlockFace.WEST);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ImageCodec.MAGIC);
+            out.writeByte(1);
+            out.writeLong(image.getCreator().getMostSignificantBits());
+            out.writeLong(image.getCreator().getLeastSignificantBits());
+            out.writeUTF(image.getImageName());
+            out.writeUTF("world");
+            out.writeLong(-1234L << 38 | 5678L << 12 | 72);
+            out.writeFloat(90);
+            out.writeFloat(15);
+            out.writeByte(3); // WEST
+            out.writeInt(0);
+        }
+
+        assertEquals(image, ImageCodec.decode(bytes.toByteArray()));
+    }
+
+    @Test
+    void unknownVersionIsRejected() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ImageCodec.MAGIC);
+            out.writeByte(ImageCodec.VERSION + 1);
+        }
+
+        assertThrows(UncheckedIOException.class, () -> ImageCodec.decode(bytes.toByteArray()));
+    }
+
+    @Test
+    void legacyDataIsDetected() throws IOException {
+
+        CustomImage image = TestImages.createFacing("image", BlockFace.EAST);
+        byte[] legacy = serialize(image);
+        assertEquals(0xAC, legacy[0] & 0xFF);
+        assertEquals(0xED, legacy[1] & 0xFF);
+        assertTrue(ImageCodec.isLegacy(legacy), "serialized data should be legacy");
+        assertFalse(ImageCodec.isLegacy(ImageCodec.encode(image)), "encoded data should not be legacy");
+        assertFalse(ImageCodec.isLegacy(new byte[] { (byte) 0xAC }), "a single byte should not be legacy");
+        assertEquals(image, ImageCodec.decode(legacy));
+    }
+
+    static byte[] serialize(CustomImage image) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(image);
+        }
+
+        return bytes.toByteArray();
+    }
+}
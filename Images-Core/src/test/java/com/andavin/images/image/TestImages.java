@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Mark
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.andavin.images.image;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Creates {@link CustomImage images} for tests without
+ * needing a running server.
+ *
+ * @since October 18, 2026
+ * @author Andavin
+ */
+public final class TestImages {
+
+    private static final UUID WORLD_ID = UUID.randomUUID();
+    private static final World WORLD = (World) Proxy.newProxyInstance(World.class.getClassLoader(),
+            new Class<?>[] { World.class }, (proxy, method, args) -> {
+
+                switch (method.getName()) {
+                    case "getName":
+                        return "world";
+                    case "getUID":
+                        return WORLD_ID;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "TestWorld";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    private TestImages() {
+    }
+
+    /**
+     * Set a server that only knows about the test world so that
+     * images can be decoded. Nothing is done if a server is set.
+     */
+    public static synchronized void installServer() {
+
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        Bukkit.setServer((Server) Proxy.newProxyInstance(Server.class.getClassLoader(),
+                new Class<?>[] { Server.class }, (proxy, method, args) -> {
+
+                    switch (method.getName()) {
+                        case "getWorld":
+                            return "world".equals(args[0]) || WORLD_ID.equals(args[0]) ? WORLD : null;
+                        case "getLogger":
+                            return Logger.getLogger("TestServer");
+                        case "getName":
+                        case "getVersion":
+                        case "getBukkitVersion":
+                            return "Test";
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "TestServer";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+    }
+
+    /**
+     * Create an image that has no sections in a test world.
+     *
+     * @param name The name of the image.
+     * @return The new image.
+     */
+    public static CustomImage create(String name) {
+        return create(name, WORLD);
+    }
+
+    /**
+     * Create an image that has no sections in the given world.
+     *
+     * @param name The name of the image.
+     * @param world The world of the image or {@code null} to
+     *              create an image that cannot be encoded.
+     * @return The new image.
+     */
+    public static CustomImage create(String name, World world) {
+        return new CustomImage(CustomImage.UNKNOWN_CREATOR, name, new Location(world, 0, 64, 0), BlockFace.NORTH);
+    }
+
+    /**
+     * Create an image that has no sections in a test world
+     * facing the given direction.
+     *
+     * @param name The name of the image.
+     * @param direction The direction the image faces.
+     * @return The new image.
+     */
+    public static CustomImage createFacing(String name, BlockFace direction) {
+        return new CustomImage(UUID.randomUUID(), name, new Location(WORLD, -1234, 72, 5678, 90, 15), direction);
+    }
+}
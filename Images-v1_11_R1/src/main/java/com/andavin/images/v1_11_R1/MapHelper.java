@@ -23,6 +23,14 @@
  */
 package com.andavin.images.v1_11_R1;
 
+import com.andavin.reflect.FieldMatcher;
+import com.andavin.util.Logger;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.ReferenceCountUtil;
 import net.minecraft.server.v1_11_R1.*;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -31,18 +39,21 @@ import org.bukkit.craftbukkit.v1_11_R1.CraftWorld;
 import org.bukkit.craftbukkit.v1_11_R1.block.CraftBlock;
 import org.bukkit.craftbukkit.v1_11_R1.entity.CraftPlayer;
 import org.bukkit.entity.Player;
-import org.bukkit.map.MapPalette;
 import org.bukkit.map.MapView;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.andavin.reflect.Reflection.findField;
+import static com.andavin.reflect.Reflection.findMethod;
+import static com.andavin.reflect.Reflection.getFieldValue;
+import static com.andavin.reflect.Reflection.invokeMethod;
 import static com.andavin.reflect.Reflection.setFieldValue;
 import static java.util.Collections.emptyList;
 
@@ -55,6 +66,10 @@ class MapHelper extends com.andavin.images.MapHelper {
     static final int DEFAULT_STARTING_ID = 8000;
     private static final Field ENTITY_ID = findField(Entity.class, "id");
     private static final Map<UUID, AtomicInteger> MAP_IDS = new HashMap<>(4);
+    private static final String ENCODER = "encoder";
+    private static final Field CHANNEL = findField(NetworkManager.class, new FieldMatcher(Channel.class));
+    private static final Method ENCODE = findMethod(MessageToByteEncoder.class, "encode",
+            ChannelHandlerContext.class, Object.class, ByteBuf.class);
 
     @Override
     protected MapView getWorldMap(int id) {
@@ -68,42 +83,109 @@ class MapHelper extends com.andavin.images.MapHelper {
     }
 
     @Override
-    protected void createMap(int frameId, int mapId, Player player, Location location, BlockFace direction, int rotation, byte[] pixels) {
+    protected Object[] createFrame(int frameId, int mapId, Location location, BlockFace direction, int rotation) {
 
         ItemStack item = new ItemStack(Items.FILLED_MAP);
         item.setData(mapId);
 
-        EntityItemFrame frame = new EntityItemFrame(((CraftWorld) player.getWorld()).getHandle());
+        EntityItemFrame frame = new EntityItemFrame(((CraftWorld) location.getWorld()).getHandle());
         frame.setSilent(true); // Don't send the sound packet
         frame.setItem(item); // Must set this first to avoid updating surrounding blocks
         frame.setLocation(location.getX(), location.getY(), location.getZ(), 0, 0);
         frame.setDirection(CraftBlock.blockFaceToNotch(direction));
         setFieldValue(ENTITY_ID, frame, frameId);
 
-        PlayerConnection connection = ((CraftPlayer) player).getHandle().playerConnection;
-        connection.sendPacket(new PacketPlayOutSpawnEntity(frame, 71,
-                frame.direction.get2DRotationValue(), frame.getBlockPosition()));
-        connection.sendPacket(new PacketPlayOutEntityMetadata(frame.getId(), frame.getDataWatcher(), true));
-        connection.sendPacket(new PacketPlayOutMap(mapId, (byte) 3, false, emptyList(), pixels, 0, 0, 128, 128));
+        return new Object[] {
+                new PacketPlayOutSpawnEntity(frame, 71,
+                        frame.direction.get2DRotationValue(), frame.getBlockPosition()),
+                new PacketPlayOutEntityMetadata(frame.getId(), frame.getDataWatcher(), true)
+        };
     }
 
     @Override
-    protected void destroyMap(Player player, int[] frameIds) {
-        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(new PacketPlayOutEntityDestroy(frameIds));
+    protected Object createMapData(int mapId, byte[] pixels) {
+        return new PacketPlayOutMap(mapId, (byte) 3, false, emptyList(), pixels, 0, 0, 128, 128);
     }
 
     @Override
-    protected byte[] createPixels(BufferedImage image) {
+    protected void send(Player player, List<Object> packets) {
+
+        Channel channel = this.getChannel(player);
+        Object[] messages = packets.toArray();
+        // NetworkManager#sendPacket always flushes in 1.11.2, so write everything from one
+        // task on the event loop (keeping it in order with packets sent
+        // by the server) and flush a single time at the end
+        try {
+            channel.eventLoop().execute(() -> {
+
+                // Pre-encoded map data is written in its place among the packets
+                for (Object message : messages) {
+                    channel.write(message);
+                }
+
+                channel.flush();
+            });
+        } catch (RejectedExecutionException e) {
+            // The connection is shutting down so nothing will be written
+            for (Object message : messages) {
+                ReferenceCountUtil.release(message);
+            }
+        }
+    }
 
-        int pixelCount = image.getWidth() * image.getHeight();
-        int[] pixels = new int[pixelCount];
-        image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
+    @Override
+    protected Object encode(Player player, Object packet) {
+
+        Channel channel = this.getChannel(player);
+        ChannelHandlerContext context = channel.pipeline().context(ENCODER);
+        if (context == null || !(context.handler() instanceof PacketEncoder)) {
+            return null; // The encoder has been replaced so it cannot be used
+        }
 
-        byte[] colors = new byte[pixelCount];
-        for (int i = 0; i < pixelCount; i++) {
-            colors[i] = MapPalette.matchColor(new Color(pixels[i], true));
+        ByteBuf buf = channel.alloc().buffer();
+        try {
+            invokeMethod(ENCODE, context.handler(), context, packet, buf);
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            preEncode = false;
+            Logger.warn(e, "Failed to pre-encode map data, packets will be sent instead");
+            return null;
         }
+    }
+
+    @Override
+    protected Object duplicate(Player player, Object encoded) {
+        // The buffer skips the encoder so it can only be written
+        // to players whose pipeline would have encoded it the same.
+        // Netty 4.0 has no retainedDuplicate, but a duplicate shares
+        // the reference count of the buffer so retaining it is the same.
+        ChannelHandler encoder = this.getChannel(player).pipeline().get(ENCODER);
+        return encoder instanceof PacketEncoder ? ((ByteBuf) encoded).duplicate().retain() : null;
+    }
+
+    @Override
+    protected void release(Object encoded) {
+        ((ByteBuf) encoded).release();
+    }
+
+    @Override
+    protected void discard(Object packet) {
+        // Only the duplicated map data holds a reference
+        ReferenceCountUtil.release(packet);
+    }
+
+    @Override
+    protected boolean isWritable(Player player) {
+        return this.getChannel(player).isWritable();
+    }
+
+    @Override
+    protected void destroyMap(Player player, int[] frameIds) {
+        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(new PacketPlayOutEntityDestroy(frameIds));
+    }
 
-        return colors;
+    private Channel getChannel(Player player) {
+        return getFieldValue(CHANNEL, ((CraftPlayer) player).getHandle().playerConnection.networkManager);
     }
 }
@@ -70,7 +70,7 @@ class PacketListener extends com.andavin.images.PacketListener<PacketPlayInUseEn
         int mapId = item.getData();
         if (mapId >= DEFAULT_STARTING_ID && item.getItem() instanceof ItemWorldMap) {
 
-            CustomImageSection section = getImageSection(mapId);
+            CustomImageSection section = getImageSection(player.getWorld(), mapId);
             if (section != null) {
 
                 AtomicBoolean complete = new AtomicBoolean();
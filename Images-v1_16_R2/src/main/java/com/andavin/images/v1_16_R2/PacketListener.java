@@ -68,7 +68,7 @@ class PacketListener extends com.andavin.images.PacketListener<PacketPlayInUseEn
             int mapId = tag.getInt("map");
             if (mapId >= MapHelper.DEFAULT_STARTING_ID) {
 
-                CustomImageSection section = getImageSection(mapId);
+                CustomImageSection section = getImageSection(player.getWorld(), mapId);
                 if (section != null) {
 
                     AtomicBoolean complete = new AtomicBoolean();
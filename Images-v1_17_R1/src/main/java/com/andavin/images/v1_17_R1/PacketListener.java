@@ -94,7 +94,7 @@ class PacketListener extends com.andavin.images.PacketListener<ServerboundIntera
             int mapId = tag.getInt("map");
             if (mapId >= MapHelper.DEFAULT_STARTING_ID) {
 
-                CustomImageSection section = getImageSection(mapId);
+                CustomImageSection section = getImageSection(player.getWorld(), mapId);
                 if (section != null) {
 
                     AtomicBoolean complete = new AtomicBoolean();
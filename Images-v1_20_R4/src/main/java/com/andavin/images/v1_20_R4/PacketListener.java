@@ -100,7 +100,7 @@ class PacketListener extends com.andavin.images.PacketListener<ServerboundIntera
         MapId mapId = item.get(DataComponents.MAP_ID);
         if (mapId != null && mapId.id() >= MapHelper.DEFAULT_STARTING_ID) {
 
-            CustomImageSection section = getImageSection(mapId.id());
+            CustomImageSection section = getImageSection(player.getWorld(), mapId.id());
             if (section != null) {
 
                 AtomicBoolean complete = new AtomicBoolean();
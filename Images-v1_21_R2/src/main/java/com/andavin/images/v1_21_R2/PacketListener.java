@@ -95,7 +95,7 @@ class PacketListener extends com.andavin.images.PacketListener<ServerboundIntera
         MapId mapId = item.get(DataComponents.MAP_ID);
         if (mapId != null && mapId.id() >= MapHelper.DEFAULT_STARTING_ID) {
 
-            CustomImageSection section = getImageSection(mapId.id());
+            CustomImageSection section = getImageSection(player.getWorld(), mapId.id());
             if (section != null) {
                 Scheduler.sync(() -> {
 